@@ -1,19 +1,86 @@
 
+import java.util.Arrays;
+
 public class Contact {
 	public int node,time;
-	
+	//sorted times of all the contacts with node when there is more than one, null otherwise
+	//only the first size entries are used, the array grows by doubling (see trim)
+	//time is always the earliest contact
+	public int[] times;
+	public int size;
+
 	public Contact(int _node,int _time) {
 		node = _node;
 		time = _time;
 	}
+	/*
+	Add another contact with the same node, keeping times sorted.
+	Contacts read in time order are appended in constant amortized time, the others are inserted in place
+	*/
+	public void addTime(int _time) {
+		if(times == null) {
+			times = new int[4];
+			times[0] = time;
+			size = 1;
+		}
+		if(size == times.length)
+			times = Arrays.copyOf(times, 2 * size);
+		if(_time >= times[size - 1]) {
+			times[size++] = _time;
+			return;
+		}
+		int pos = Arrays.binarySearch(times, 0, size, _time);
+		if(pos < 0)
+			pos = -pos - 1;
+		System.arraycopy(times, pos, times, pos + 1, size - pos);
+		times[pos] = _time;
+		size++;
+		time = times[0];
+	}
+	/*
+	Remove one contact at the given time, keeping times sorted. The last contact can not be removed
+	@return true if there was a contact at that time
+	*/
+	public boolean removeTime(int _time) {
+		if(times == null)
+			return false;
+		int pos = Arrays.binarySearch(times, 0, size, _time);
+		if(pos < 0)
+			return false;
+		if(size == 2) {
+			time = times[1 - pos];
+			times = null;
+			size = 0;
+			return true;
+		}
+		System.arraycopy(times, pos + 1, times, pos, size - pos - 1);
+		size--;
+		time = times[0];
+		return true;
+	}
+	/*
+	Release the unused capacity of times, called when the graph is frozen
+	*/
+	public void trim() {
+		if(times != null && times.length > size)
+			times = Arrays.copyOf(times, size);
+	}
+	public int numContacts() {
+		return times == null ? 1 : size;
+	}
+	public int getTime(int k) {
+		return times == null ? time : times[k];
+	}
 	public String toString(){
-	  return " --" + time + "--> "+ node;
+	  return " --" + (times == null ? String.valueOf(time) : Arrays.toString(Arrays.copyOf(times, size))) + "--> "+ node;
 	}
 	public boolean equals(Contact x){
-	    return node == x.node && time == x.time;
+	    if(node != x.node || time != x.time || numContacts() != x.numContacts())
+	    	return false;
+	    return times == null || Arrays.equals(times, 0, size, x.times, 0, size);
 	  }
 	public int hashCode(){
-	    //(node<<16) ^ time   // not for now because the consideration is only for single contacts for edge
+	    //contacts with the same node are kept in the same Contact, see addTime
 	    return node;
 	  }
 	  public boolean Equals(Contact x){
@@ -6,8 +6,18 @@ import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
-import java.util.HashMap;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import gnu.trove.iterator.TIntObjectIterator;
 import gnu.trove.map.hash.TIntObjectHashMap;
@@ -15,9 +25,17 @@ import gnu.trove.map.hash.TIntObjectHashMap;
 public class FileManagerTemporal
 {
 	
-	int maxNodeMap=0;
-	
-	HashMap<Integer,NameMapping> mappingNames= new HashMap<>();
+	//Dictionary of the node names read, the id of each name is the id of its node
+	NodeNameDictionary nodeNames= new NodeNameDictionary();
+
+	//Binary graph format: magic number ("TGRF") and version
+	static final int BINARY_MAGIC=0x54475246;
+	static final int BINARY_VERSION=1;
+	//Binary graph format flags
+	static final int BINARY_DIRECTED=1;
+	static final int BINARY_EDGE_OFFSETS=2;
+	//Number of ints of the binary header
+	static final int BINARY_HEADER_INTS=10;
     
 	/*
 	Read a graph from input file
@@ -42,21 +60,8 @@ public class FileManagerTemporal
                 String[] split=str.split("[, \t]");
                 String sourcestr=split[0];
                 String deststr=split[1];
-                if(!mappingNames.containsKey(sourcestr.hashCode())) {
-                	mappingNames.put(sourcestr.hashCode(), new NameMapping(maxNodeMap, sourcestr));
-                	source = maxNodeMap;
-                	maxNodeMap++;
-                }else {
-                	source = mappingNames.get(sourcestr.hashCode()).map;
-                }
-                
-                if(!mappingNames.containsKey(deststr.hashCode())) {
-                	mappingNames.put(deststr.hashCode(), new NameMapping(maxNodeMap, deststr));
-                	destination = maxNodeMap;
-                	maxNodeMap++;
-                }else {
-                	destination = mappingNames.get(deststr.hashCode()).map;
-                }
+                source = nodeNames.getOrAdd(sourcestr);
+                destination = nodeNames.getOrAdd(deststr);
                 int time=Integer.parseInt(split[2]);
                 g.addEdge(source,destination,time);
             }
@@ -67,6 +72,293 @@ public class FileManagerTemporal
         }
         return g;
     }
+	/*
+	Read a graph from input file in parallel, directly into a CSR snapshot.
+	The edge list is split into byte ranges ending on line boundaries, parsed by numThreads workers
+	with a scanner working on the bytes of the file. Each worker numbers the names of its range locally
+	and keeps its own edge buffers; the merge assigns node ids in order of first appearance in the file,
+	as readGraph, and prints the ingest throughput.
+	@param graphFile: path of the file
+	@param numThreads: number of worker threads
+	*/
+	public TemporalGraphCSR readGraphParallel(String graphFile, int numThreads)
+	{
+		TemporalGraphCSR g=null;
+		ForkJoinPool pool=new ForkJoinPool(numThreads);
+		try(FileChannel channel=FileChannel.open(Paths.get(graphFile),StandardOpenOption.READ))
+		{
+			long inizio=System.nanoTime();
+			long size=channel.size();
+			//Header: direction and number of nodes
+			long[] position={0};
+			String str=readLine(channel,position);
+			boolean directed=str.trim().equals("directed");
+			int numNodes=Integer.parseInt(readLine(channel,position).trim());
+			//Byte ranges: at least one per thread and no longer than a mapping can be
+			int numChunks=(int)Math.max(4L*numThreads,(size-position[0])/(1<<30)+1);
+			long[] bounds=new long[numChunks+1];
+			bounds[0]=position[0];
+			for(int k=1;k<numChunks;k++)
+			{
+				position[0]=Math.max(bounds[k-1],position[0]+(size-position[0])/(numChunks-k+1));
+				readLine(channel,position);
+				bounds[k]=position[0];
+			}
+			bounds[numChunks]=size;
+			Vector<Future<EdgeChunk>> futures=new Vector<>(numChunks);
+			for(int k=0;k<numChunks;k++)
+			{
+				long from=bounds[k], to=bounds[k+1];
+				futures.add(pool.submit(() -> new EdgeChunk(channel,from,to).parse()));
+			}
+			EdgeChunk[] chunks=new EdgeChunk[numChunks];
+			for(int k=0;k<numChunks;k++)
+				chunks[k]=futures.get(k).get();
+
+			//Merge names in file order, so that ids follow the first appearance of each name
+			int numedges=0;
+			int[] edgeOffsets=new int[numChunks];
+			for(int k=0;k<numChunks;k++)
+			{
+				EdgeChunk chunk=chunks[k];
+				chunk.globalIds=new int[chunk.numNames];
+				for(int l=0;l<chunk.numNames;l++)
+					chunk.globalIds[l]=nodeNames.getOrAdd(chunk.bytes,chunk.nameStart[l],chunk.nameLength[l]);
+				edgeOffsets[k]=numedges;
+				numedges+=chunk.numEdges;
+			}
+			if(nodeNames.size()>numNodes)
+				throw new IOException(graphFile+" has "+nodeNames.size()+" node names but declares "+numNodes+" nodes");
+			int[] sources=new int[numedges];
+			int[] dests=new int[numedges];
+			int[] times=new int[numedges];
+			Vector<Future<?>> copies=new Vector<>(numChunks);
+			for(int k=0;k<numChunks;k++)
+			{
+				EdgeChunk chunk=chunks[k];
+				int offset=edgeOffsets[k];
+				copies.add(pool.submit(() -> {
+					for(int i=0;i<chunk.numEdges;i++)
+					{
+						sources[offset+i]=chunk.globalIds[chunk.sources[i]];
+						dests[offset+i]=chunk.globalIds[chunk.dests[i]];
+						times[offset+i]=chunk.times[i];
+					}
+				}));
+			}
+			for(Future<?> copy : copies)
+				copy.get();
+			chunks=null;
+			int edges=numedges;
+			g=pool.submit(() -> TemporalGraphCSR.fromEdges(directed,numNodes,sources,dests,times,edges)).get();
+			double seconds=(System.nanoTime()-inizio)/1e9;
+			System.out.println("Read "+numedges+" edges in "+seconds+" secs ("+(long)(numedges/Math.max(seconds,1e-9))+" edges/sec)");
+		}
+		catch(Exception e){
+			System.out.println(e.getMessage());
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+		return g;
+	}
+
+	/*
+	Read the line starting at position[0], moving position[0] after its end
+	*/
+	private static String readLine(FileChannel channel, long[] position) throws IOException
+	{
+		StringBuilder line=new StringBuilder();
+		ByteBuffer buffer=ByteBuffer.allocate(256);
+		while(true)
+		{
+			buffer.clear();
+			int read=channel.read(buffer,position[0]);
+			if(read<=0)
+				return line.toString();
+			for(int i=0;i<read;i++)
+			{
+				position[0]++;
+				byte b=buffer.get(i);
+				if(b=='\n')
+					return line.toString();
+				line.append((char)b);
+			}
+		}
+	}
+
+	/*
+	Edges of a byte range of an edge list, with node names numbered in order of first appearance in the range.
+	Names are kept as positions in the mapped range, so no String is built while parsing
+	*/
+	private static final class EdgeChunk
+	{
+		final ByteBuffer bytes;
+		private final long from;
+		//Local id of each edge end and time of each edge
+		int[] sources=new int[1024], dests=new int[1024], times=new int[1024];
+		int numEdges;
+		//Position and length of each name in bytes
+		int[] nameStart=new int[256], nameLength=new int[256];
+		int numNames;
+		//Open addressing table of local ids + 1, 0 for empty slots
+		private int[] table=new int[512];
+		//Global id of each local id, set by the merge
+		int[] globalIds;
+
+		EdgeChunk(FileChannel channel, long from, long to) throws IOException
+		{
+			this.bytes=channel.map(FileChannel.MapMode.READ_ONLY,from,to-from);
+			this.from=from;
+		}
+
+		/*
+		Parse every line of the range: source and destination names and time, separated by commas, spaces or tabs
+		*/
+		EdgeChunk parse() throws IOException
+		{
+			int end=bytes.limit();
+			int pos=0;
+			while(pos<end)
+			{
+				pos=skipSeparators(pos,end);
+				if(pos<end && (bytes.get(pos)=='\n' || bytes.get(pos)=='\r'))
+				{
+					pos++;
+					continue;
+				}
+				if(pos>=end)
+					break;
+				int sourceStart=pos;
+				pos=skipName(pos,end);
+				int source=localId(sourceStart,pos-sourceStart);
+				pos=skipSeparators(pos,end);
+				int destStart=pos;
+				pos=skipName(pos,end);
+				if(pos==destStart)
+					throw new IOException("Missing destination at byte "+(from+destStart));
+				int dest=localId(destStart,pos-destStart);
+				pos=skipSeparators(pos,end);
+				boolean negative=pos<end && bytes.get(pos)=='-';
+				if(negative)
+					pos++;
+				int timeStart=pos;
+				int time=0;
+				byte b;
+				while(pos<end && (b=bytes.get(pos))>='0' && b<='9')
+				{
+					time=time*10+(b-'0');
+					pos++;
+				}
+				if(pos==timeStart)
+					throw new IOException("Missing time at byte "+(from+timeStart));
+				//Ignore the rest of the line
+				while(pos<end && bytes.get(pos)!='\n')
+					pos++;
+				addEdge(source,dest,negative ? -time : time);
+			}
+			return this;
+		}
+
+		private int skipSeparators(int pos, int end)
+		{
+			byte b;
+			while(pos<end && ((b=bytes.get(pos))==',' || b==' ' || b=='\t'))
+				pos++;
+			return pos;
+		}
+
+		private int skipName(int pos, int end)
+		{
+			byte b;
+			while(pos<end && (b=bytes.get(pos))!=',' && b!=' ' && b!='\t' && b!='\n' && b!='\r')
+				pos++;
+			return pos;
+		}
+
+		private void addEdge(int source, int dest, int time)
+		{
+			if(numEdges==sources.length)
+			{
+				sources=Arrays.copyOf(sources,2*numEdges);
+				dests=Arrays.copyOf(dests,2*numEdges);
+				times=Arrays.copyOf(times,2*numEdges);
+			}
+			sources[numEdges]=source;
+			dests[numEdges]=dest;
+			times[numEdges]=time;
+			numEdges++;
+		}
+
+		/*
+		Local id of the name in bytes start..start+length-1, numbering it if it is new
+		*/
+		private int localId(int start, int length)
+		{
+			int hash=0;
+			for(int i=start;i<start+length;i++)
+				hash=31*hash+bytes.get(i);
+			int mask=table.length-1;
+			for(int slot=(hash^(hash>>>16)) & mask;;slot=(slot+1) & mask)
+			{
+				int id=table[slot]-1;
+				if(id<0)
+				{
+					id=numNames;
+					if(numNames==nameStart.length)
+					{
+						nameStart=Arrays.copyOf(nameStart,2*numNames);
+						nameLength=Arrays.copyOf(nameLength,2*numNames);
+					}
+					nameStart[id]=start;
+					nameLength[id]=length;
+					numNames++;
+					table[slot]=id+1;
+					if(2*numNames>table.length)
+						rehash();
+					return id;
+				}
+				if(sameName(id,start,length))
+					return id;
+			}
+		}
+
+		private boolean sameName(int id, int start, int length)
+		{
+			if(nameLength[id]!=length)
+				return false;
+			for(int i=0;i<length;i++)
+				if(bytes.get(nameStart[id]+i)!=bytes.get(start+i))
+					return false;
+			return true;
+		}
+
+		private void rehash()
+		{
+			table=new int[2*table.length];
+			int mask=table.length-1;
+			for(int id=0;id<numNames;id++)
+			{
+				int hash=0;
+				for(int i=nameStart[id];i<nameStart[id]+nameLength[id];i++)
+					hash=31*hash+bytes.get(i);
+				int slot=(hash^(hash>>>16)) & mask;
+				while(table[slot]!=0)
+					slot=(slot+1) & mask;
+				table[slot]=id+1;
+			}
+		}
+	}
+
+	/*
+	Dictionary of the node names read by this FileManagerTemporal, to report nodes with their original names
+	*/
+	public NodeNameDictionary getNodeNames()
+	{
+		return nodeNames;
+	}
+
 	public void writeGraph(String file,TemporalGraph graph) {
 		try
         {
@@ -94,6 +386,162 @@ public class FileManagerTemporal
         }
 	}
 
+	/*
+	Write a CSR snapshot to a binary file, which can be loaded by readBinaryGraph without parsing.
+	All values are little endian ints:
+	header (magic, version, flags, numNodes, numedges, number of out edges, number of out contacts,
+	number of in edges, number of in contacts, number of node names),
+	node-name dictionary (numNames+1 byte offsets, then the UTF-8 bytes of the names of nodes 0..numNames-1
+	padded to a multiple of 4),
+	out arrays (offsets, neighbors, edge offsets if some edge has more than one contact, times, times sorted by node),
+	in arrays in the same order.
+	Node names are the ones read by readGraph with this FileManagerTemporal, if any
+	@param file: path of the file
+	@param graph: snapshot to write
+	*/
+	public void writeBinaryGraph(String file, TemporalGraphCSR graph)
+	{
+		try(FileChannel channel=FileChannel.open(Paths.get(file),StandardOpenOption.CREATE,StandardOpenOption.WRITE,StandardOpenOption.TRUNCATE_EXISTING))
+		{
+			int numNames=nodeNames.size();
+			int[] nameOffsets=Arrays.copyOf(nodeNames.getOffsets(),numNames+1);
+			byte[] nameBytes=nodeNames.getArena();
+			boolean edgeOffsets=!graph.hasSingleContacts();
+			int flags=(graph.isDirected() ? BINARY_DIRECTED : 0) | (edgeOffsets ? BINARY_EDGE_OFFSETS : 0);
+
+			ByteBuffer buffer=ByteBuffer.allocateDirect(1<<16).order(ByteOrder.LITTLE_ENDIAN);
+			writeInts(channel,buffer,new int[] {BINARY_MAGIC, BINARY_VERSION, flags, graph.getNumNodes(), graph.getNumedges(),
+					graph.getOutNeighbors().length, graph.getOutTimes().length, graph.getInNeighbors().length, graph.getInTimes().length, numNames});
+			writeInts(channel,buffer,nameOffsets);
+			int k=0;
+			while(k<nameOffsets[numNames])
+			{
+				if(!buffer.hasRemaining())
+					flush(channel,buffer);
+				int n=Math.min(buffer.remaining(),nameOffsets[numNames]-k);
+				buffer.put(nameBytes,k,n);
+				k+=n;
+			}
+			for(int pad=(4-nameOffsets[numNames]%4)%4;pad>0;pad--)
+			{
+				if(!buffer.hasRemaining())
+					flush(channel,buffer);
+				buffer.put((byte)0);
+			}
+			writeInts(channel,buffer,graph.getOutOffsets());
+			writeInts(channel,buffer,graph.getOutNeighbors());
+			if(edgeOffsets)
+				writeInts(channel,buffer,graph.getOutEdgeOffsets());
+			writeInts(channel,buffer,graph.getOutTimes());
+			writeInts(channel,buffer,graph.getOutTimesByTime());
+			writeInts(channel,buffer,graph.getInOffsets());
+			writeInts(channel,buffer,graph.getInNeighbors());
+			if(edgeOffsets)
+				writeInts(channel,buffer,graph.getInEdgeOffsets());
+			writeInts(channel,buffer,graph.getInTimes());
+			writeInts(channel,buffer,graph.getInTimesByTime());
+			flush(channel,buffer);
+		}
+		catch(Exception e){
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/*
+	Append an int array to the channel through the buffer
+	*/
+	private static void writeInts(FileChannel channel, ByteBuffer buffer, int[] values) throws IOException
+	{
+		int k=0;
+		while(k<values.length)
+		{
+			if(buffer.remaining()<4)
+				flush(channel,buffer);
+			IntBuffer ints=buffer.asIntBuffer();
+			int n=Math.min(ints.remaining(),values.length-k);
+			ints.put(values,k,n);
+			buffer.position(buffer.position()+4*n);
+			k+=n;
+		}
+	}
+
+	/*
+	Write the content of the buffer to the channel and clear it
+	*/
+	private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException
+	{
+		buffer.flip();
+		while(buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+	}
+
+	/*
+	Load a CSR snapshot written by writeBinaryGraph.
+	The file is memory mapped and each array is copied in bulk from the mapping, so no parsing nor sorting is needed.
+	Node names replace the ones of this FileManagerTemporal
+	@param file: path of the file
+	*/
+	public TemporalGraphCSR readBinaryGraph(String file)
+	{
+		TemporalGraphCSR g=null;
+		try(FileChannel channel=FileChannel.open(Paths.get(file),StandardOpenOption.READ))
+		{
+			long position=0;
+			int[] header=readInts(channel,position,BINARY_HEADER_INTS);
+			position+=4L*BINARY_HEADER_INTS;
+			if(header[0]!=BINARY_MAGIC || header[1]!=BINARY_VERSION)
+				throw new IOException(file+" is not a binary temporal graph (version "+BINARY_VERSION+")");
+			boolean directed=(header[2] & BINARY_DIRECTED)!=0;
+			boolean edgeOffsets=(header[2] & BINARY_EDGE_OFFSETS)!=0;
+			int numNodes=header[3];
+			int numedges=header[4];
+			int numOutEdges=header[5], numOutContacts=header[6], numInEdges=header[7], numInContacts=header[8];
+			int numNames=header[9];
+
+			int[] nameOffsets=readInts(channel,position,numNames+1);
+			position+=4L*(numNames+1);
+			int nameBytes=nameOffsets[numNames];
+			nodeNames=new NodeNameDictionary(numNames);
+			if(numNames>0)
+			{
+				ByteBuffer names=channel.map(FileChannel.MapMode.READ_ONLY,position,nameBytes);
+				for(int i=0;i<numNames;i++)
+					if(nodeNames.getOrAdd(names,nameOffsets[i],nameOffsets[i+1]-nameOffsets[i])!=i)
+						throw new IOException(file+" has a repeated node name");
+			}
+			position+=(nameBytes+3)/4*4L;
+
+			int[][] arrays=new int[10][];
+			int[] lengths={numNodes+1, numOutEdges, edgeOffsets ? numOutEdges+1 : 0, numOutContacts, numOutContacts,
+					numNodes+1, numInEdges, edgeOffsets ? numInEdges+1 : 0, numInContacts, numInContacts};
+			for(int k=0;k<lengths.length;k++)
+			{
+				if((k==2 || k==7) && !edgeOffsets)
+					continue;
+				arrays[k]=readInts(channel,position,lengths[k]);
+				position+=4L*lengths[k];
+			}
+			g=new TemporalGraphCSR(directed,numedges,arrays[0],arrays[1],arrays[2],arrays[3],
+					arrays[5],arrays[6],arrays[7],arrays[8],arrays[4],arrays[9]);
+		}
+		catch(Exception e){
+			System.out.println(e.getMessage());
+		}
+		return g;
+	}
+
+	/*
+	Copy length ints starting at a byte position of the channel, mapping that region of the file
+	*/
+	private static int[] readInts(FileChannel channel, long position, int length) throws IOException
+	{
+		int[] values=new int[length];
+		if(length>0)
+			channel.map(FileChannel.MapMode.READ_ONLY,position,4L*length).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(values);
+		return values;
+	}
+
     /*
 	Read the set of queries from input file
 	@param queriesFile: path of the file
@@ -135,6 +583,19 @@ public class FileManagerTemporal
 	Write query results to output file
 	*/
     public void writeResults(Vector<TemporalGraph> setQueries,TemporalGraph target, Vector<Long> setCounts, Vector<Double> setRunningTimes, String outputFile)
+    {
+        writeResults(setQueries,target.getNumNodes(),target.getNumedges(),setCounts,setRunningTimes,outputFile);
+    }
+
+	/*
+	Write query results to output file, for a target loaded as a CSR snapshot
+	*/
+    public void writeResults(Vector<TemporalGraph> setQueries,TemporalGraphCSR target, Vector<Long> setCounts, Vector<Double> setRunningTimes, String outputFile)
+    {
+        writeResults(setQueries,target.getNumNodes(),target.getNumedges(),setCounts,setRunningTimes,outputFile);
+    }
+
+    private void writeResults(Vector<TemporalGraph> setQueries,int targetNodes,int targetEdges, Vector<Long> setCounts, Vector<Double> setRunningTimes, String outputFile)
     {
         try
         {
@@ -145,7 +606,7 @@ public class FileManagerTemporal
             {
                 TemporalGraph q=setQueries.get(i);
                 String adjString="";//q.getAdjString();
-                bw.write(adjString+","+q.getNumNodes()+","+q.getNumedges()+","+target.getNumNodes()+","+target.getNumedges()+","+setCounts.get(i)+","+setRunningTimes.get(i)+"\n");
+                bw.write(adjString+","+q.getNumNodes()+","+q.getNumedges()+","+targetNodes+","+targetEdges+","+setCounts.get(i)+","+setRunningTimes.get(i)+"\n");
             }
             bw.close();
         }
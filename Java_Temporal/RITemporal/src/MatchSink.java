@@ -0,0 +1,157 @@
+/*
+Receiver of the matches found by RISolverTemporal, called with each verified mapping while the search goes on.
+In a parallel search it is called concurrently by the worker threads, so implementations must be thread safe.
+The search waits for onMatch to return, so a slow sink slows down the search instead of queueing matches.
+*/
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Vector;
+import java.util.concurrent.atomic.LongAdder;
+
+public interface MatchSink
+{
+	/*
+	Receive a match. Arrays are reused by the search, copy them to keep them
+	@param nodes: target node mapped to each query node
+	@param contactTimes: time of the target contact bound to each query contact,
+	query contacts are described by RISolverTemporal.getQueryContactSources, getQueryContactTargets and getQueryContactTimes
+	@return true to go on with the search, false to stop it
+	*/
+	boolean onMatch(int[] nodes, int[] contactTimes);
+
+	/*
+	Keep the first k matches and stop the search
+	*/
+	public static class FirstK implements MatchSink
+	{
+		private final int k;
+		private final Vector<int[]> nodes=new Vector<>();
+		private final Vector<int[]> contactTimes=new Vector<>();
+
+		public FirstK(int k)
+		{
+			this.k=k;
+		}
+
+		@Override
+		public synchronized boolean onMatch(int[] nodes, int[] contactTimes)
+		{
+			if(this.nodes.size()<k)
+			{
+				this.nodes.add(nodes.clone());
+				this.contactTimes.add(contactTimes.clone());
+			}
+			return this.nodes.size()<k;
+		}
+
+		/*
+		Target nodes of each kept match, indexed by query node
+		*/
+		public synchronized Vector<int[]> getNodes()
+		{
+			return new Vector<>(nodes);
+		}
+
+		/*
+		Contact times of each kept match, indexed by query contact
+		*/
+		public synchronized Vector<int[]> getContactTimes()
+		{
+			return new Vector<>(contactTimes);
+		}
+	}
+
+	/*
+	Keep the first match and stop the search, to check if the query occurs in the target
+	*/
+	public static class FirstMatch extends FirstK
+	{
+		public FirstMatch()
+		{
+			super(1);
+		}
+
+		public boolean found()
+		{
+			return !getNodes().isEmpty();
+		}
+	}
+
+	/*
+	Only count the matches
+	*/
+	public static class Count implements MatchSink
+	{
+		private final LongAdder count=new LongAdder();
+
+		@Override
+		public boolean onMatch(int[] nodes, int[] contactTimes)
+		{
+			count.increment();
+			return true;
+		}
+
+		public long getCount()
+		{
+			return count.sum();
+		}
+	}
+
+	/*
+	Write each match as a line: the target node of each query node, then the contact times after a '|'.
+	The search stops at the first write error, which is kept and returned by getError
+	*/
+	public static class StreamWriter implements MatchSink
+	{
+		private final Writer writer;
+		private final NodeNameDictionary targetNames;
+		private final StringBuilder line=new StringBuilder();
+		private IOException error;
+
+		/*
+		Constructor
+		@param writer: where matches are written, it is not closed by the sink
+		@param targetNames: names of the target nodes, null to write ids
+		*/
+		public StreamWriter(Writer writer, NodeNameDictionary targetNames)
+		{
+			this.writer=writer;
+			this.targetNames=targetNames;
+		}
+
+		@Override
+		public synchronized boolean onMatch(int[] nodes, int[] contactTimes)
+		{
+			line.setLength(0);
+			for(int i=0;i<nodes.length;i++)
+			{
+				if(i>0)
+					line.append(' ');
+				if(targetNames!=null && nodes[i]<targetNames.size())
+					line.append(targetNames.name(nodes[i]));
+				else
+					line.append(nodes[i]);
+			}
+			line.append(" |");
+			for(int time : contactTimes)
+				line.append(' ').append(time);
+			line.append('\n');
+			try
+			{
+				writer.append(line);
+				return true;
+			}
+			catch(IOException e)
+			{
+				error=e;
+				return false;
+			}
+		}
+
+		public synchronized IOException getError()
+		{
+			return error;
+		}
+	}
+}
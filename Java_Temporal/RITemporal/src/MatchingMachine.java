@@ -23,6 +23,16 @@ public class MatchingMachine
 	public int[] i_edges_sizes;
 	//Set of query edges
 	public MaMaEdge[][] edges;
+	//Query edges of temporal machines, numbered following the states: edges of state S are numbered from edge_offsets[S]
+	//in the order of edges[S]. Source state, target state and time of each edge
+	public int[] edge_offsets;
+	public int[] edge_sources;
+	public int[] edge_targets;
+	public int[] edge_times;
+	//Previous edges consecutive to each edge e, from order_offsets[e], and their gaps (see buildOrders)
+	public int[] order_offsets;
+	public int[] order_edges;
+	public int[] order_gaps;
 	//Map each node to the corresponding state
 	public int[] map_node_to_state;
 	//Map each state to the corresponding node
@@ -32,6 +42,38 @@ public class MatchingMachine
 	public int[] parent_state;
 	//Type of node mapped to parent state of each state S, i.e. predecessor or successor
 	public MamaParentType[] parent_type;
+	//Estimated number of partial mappings of the states up to each state S, only for machines built with a CostModel
+	public double[] estimated_nodes;
+	//Queries with at most this number of nodes get the order with the least estimated cost, larger ones a greedy order
+	private static final int EXHAUSTIVE_ORDER_NODES = 8;
+
+	/*
+	Statistics of the target used to estimate the size of the search tree of an order of the query nodes.
+	A query node mapped after a neighbor gets as candidates the neighbors of the target node mapped to it,
+	about the average degree of the domain of the neighbor, and each further query edge or temporal constraint
+	keeps a fraction of them
+	*/
+	public static class CostModel
+	{
+		//Domain size of each query node, and average out and in degree of the target nodes in its domain
+		final double[] domainSizes;
+		final double[] outDegrees;
+		final double[] inDegrees;
+		final int numTargetNodes;
+		final int delta;
+		//Fraction of pairs of contacts of a target node within delta of each other
+		final double deltaFraction;
+
+		public CostModel(double[] domainSizes, double[] outDegrees, double[] inDegrees, int numTargetNodes, int delta, double deltaFraction)
+		{
+			this.domainSizes=domainSizes;
+			this.outDegrees=outDegrees;
+			this.inDegrees=inDegrees;
+			this.numTargetNodes=Math.max(1,numTargetNodes);
+			this.delta=delta;
+			this.deltaFraction=deltaFraction;
+		}
+	}
 	
 	/*
 	Constructor
@@ -63,6 +105,23 @@ public class MatchingMachine
 		parent_type = new MamaParentType[nof_sn];
 		build(query);
 	}
+
+	/*
+	Constructor for a cost-based order of the states, see build with a CostModel
+	*/
+	public MatchingMachine(TemporalGraph query, CostModel costs)
+	{
+		nof_sn = query.getNumNodes();
+		edges_sizes = new int[nof_sn];
+		o_edges_sizes = new int[nof_sn];
+		i_edges_sizes = new int[nof_sn];
+		edges = new MaMaEdge[nof_sn][];
+		map_node_to_state = new int[nof_sn];
+		map_state_to_node = new int[nof_sn];
+		parent_state = new int[nof_sn];
+		parent_type = new MamaParentType[nof_sn];
+		build(query,costs);
+	}
 	
 	/**
 	 * build matching machine for temporal graph
@@ -72,8 +131,7 @@ public class MatchingMachine
 	{
 		TIntHashSet[] outAdiacs=ssg.getOutAdjList();
 		TIntHashSet[] inAdiacs=ssg.getInAdjList();
-		TIntObjectHashMap<Contact>[] outAdiacsTimes = ssg.getOutAdjListTimes();
-		int i, j;
+		int i;
 		NodeFlag[] node_flags = new NodeFlag[nof_sn];
 		int[][] weights = new int[nof_sn][3];
 		int[] t_parent_node = new int[nof_sn];
@@ -200,7 +258,27 @@ public class MatchingMachine
 			}
 			si++;
 		}
+		buildEdges(ssg,t_parent_node,t_parent_type);
+	}
+
+	/*
+	Build parent states and query edges of each state, once the order of the states is set.
+	The time of each edge is the earliest contact of its pair of query nodes, looked up by the pair.
+	Edges of a state are its out edges towards previous states followed by its in edges from previous states,
+	in the order of their states
+	@param t_parent_node: parent query node of each query node, -1 for nodes without parent
+	@param t_parent_type: type of the parent of each query node
+	*/
+	private void buildEdges(TemporalGraph ssg, int[] t_parent_node, MamaParentType[] t_parent_type)
+	{
+		TIntHashSet[] outAdiacs=ssg.getOutAdjList();
+		TIntHashSet[] inAdiacs=ssg.getInAdjList();
+		TIntObjectHashMap<Contact>[] outAdiacsTimes = ssg.getOutAdjListTimes();
+		TIntObjectHashMap<Contact>[] inAdiacsTimes = ssg.getInAdjListTimes();
+		int si, n, j;
 		int e_count,o_e_count,i_e_count;
+		edge_offsets = new int[nof_sn+1];
+		int[] inStates = new int[nof_sn];
 		for(si = 0; si<nof_sn; si++)
 		{
 			n = map_state_to_node[si];
@@ -209,18 +287,11 @@ public class MatchingMachine
 			else
 				parent_state[si] = -1;
 			parent_type[si] = t_parent_type[n];
-			e_count = 0;
 			o_e_count = 0;
 			TIntIterator it=outAdiacs[n].iterator();
 			while(it.hasNext())
-			{
-				int idOut=it.next();
-				if(map_node_to_state[idOut]<si)
-				{
-					e_count++;
+				if(map_node_to_state[it.next()]<si)
 					o_e_count++;
-				}
-			}
 			i_e_count = 0;
 			it=inAdiacs[n].iterator();
 			while(it.hasNext())
@@ -228,53 +299,125 @@ public class MatchingMachine
 				int idIn=it.next();
 				if(map_node_to_state[idIn]<si)
 				{
-					e_count++;
-					i_e_count++;
+					//Keep the states of the in edges sorted
+					j = i_e_count++;
+					for(; j>0 && inStates[j-1] > map_node_to_state[idIn]; j--)
+						inStates[j] = inStates[j-1];
+					inStates[j] = map_node_to_state[idIn];
 				}
 			}
+			e_count = o_e_count+i_e_count;
 			edges_sizes[si] = e_count;
 			o_edges_sizes[si] = o_e_count;
 			i_edges_sizes[si] = i_e_count;
+			edge_offsets[si+1] = edge_offsets[si]+e_count;
 			edges[si] = new MaMaEdge[e_count];
 			e_count = 0;
 			it=outAdiacs[n].iterator();
-			
-			TIntObjectIterator<Contact> itTimes = outAdiacsTimes[n].iterator();
 			while(it.hasNext())
 			{
 				int idOut=it.next();
-				int time = 0;
-		        if (itTimes.hasNext()){
-		          itTimes.advance();
-		          time = itTimes.value().time;
-		        }
 				if(map_node_to_state[idOut] < si)
 				{
-					edges[si][e_count]=new MaMaEdge(map_node_to_state[n],map_node_to_state[idOut],time);
+					edges[si][e_count]=new MaMaEdge(si,map_node_to_state[idOut],contactTime(outAdiacsTimes[n].get(idOut)));
 					e_count++;
 				}
 			}
-			for(j=0; j<si; j++)
+			for(j=0; j<i_e_count; j++)
 			{
-				int sn = map_state_to_node[j];
-				it=outAdiacs[sn].iterator();
-				itTimes = outAdiacsTimes[sn].iterator();
-				while(it.hasNext())
-				{
-					int idOut=it.next();
-					int time = 0;
-			        if (itTimes.hasNext()){
-			          itTimes.advance();
-			          time = itTimes.value().time;
-			        }
-					if(idOut==n)
-					{
-						edges[si][e_count]=new MaMaEdge(j,si,time);
-						e_count++;
-					}
-				}
+				edges[si][e_count]=new MaMaEdge(inStates[j],si,contactTime(inAdiacsTimes[n].get(map_state_to_node[inStates[j]])));
+				e_count++;
+			}
+		}
+		int nof_edges = edge_offsets[nof_sn];
+		edge_sources = new int[nof_edges];
+		edge_targets = new int[nof_edges];
+		edge_times = new int[nof_edges];
+		for(si = 0; si<nof_sn; si++)
+		{
+			for(j=0; j<edges_sizes[si]; j++)
+			{
+				int e = edge_offsets[si]+j;
+				edge_sources[e] = edges[si][j].source;
+				edge_targets[e] = edges[si][j].target;
+				edge_times[e] = edges[si][j].time;
 			}
 		}
+		buildOrders();
+	}
+
+	/*
+	Time of the earliest contact of an edge, 0 for edges added without a time
+	*/
+	private static int contactTime(Contact contact)
+	{
+		return contact == null ? 0 : contact.time;
+	}
+
+	/*
+	Precompute the order of each query edge with respect to the previous edges consecutive to it,
+	i.e. entering its source state or leaving its target state: the gap, positive if the two edges are time respecting,
+	is the time of the edge leaving the shared state minus the time of the edge entering it.
+	The edges of each state are collected in a single pass over the edges, instead of a scan of the previous states
+	*/
+	private void buildOrders()
+	{
+		int nof_edges = edge_offsets[nof_sn];
+		//Edges entering and leaving each state, numbered in order
+		int[] inOffsets = new int[nof_sn+1];
+		int[] outOffsets = new int[nof_sn+1];
+		int e;
+		for(e=0; e<nof_edges; e++)
+		{
+			inOffsets[edge_targets[e]+1]++;
+			outOffsets[edge_sources[e]+1]++;
+		}
+		for(int si=0; si<nof_sn; si++)
+		{
+			inOffsets[si+1] += inOffsets[si];
+			outOffsets[si+1] += outOffsets[si];
+		}
+		int[] inEdges = new int[nof_edges];
+		int[] outEdges = new int[nof_edges];
+		int[] inFill = inOffsets.clone();
+		int[] outFill = outOffsets.clone();
+		for(e=0; e<nof_edges; e++)
+		{
+			inEdges[inFill[edge_targets[e]]++] = e;
+			outEdges[outFill[edge_sources[e]]++] = e;
+		}
+		order_offsets = new int[nof_edges+1];
+		for(e=0; e<nof_edges; e++)
+			order_offsets[e+1] = order_offsets[e]+countBefore(inEdges,inOffsets,edge_sources[e],e)+countBefore(outEdges,outOffsets,edge_targets[e],e);
+		order_edges = new int[order_offsets[nof_edges]];
+		order_gaps = new int[order_offsets[nof_edges]];
+		for(e=0; e<nof_edges; e++)
+		{
+			int k = order_offsets[e];
+			int s = edge_sources[e];
+			for(int i=inOffsets[s]; i<inOffsets[s+1] && inEdges[i]<e; i++)
+			{
+				order_edges[k] = inEdges[i];
+				order_gaps[k++] = edge_times[e]-edge_times[inEdges[i]];
+			}
+			int t = edge_targets[e];
+			for(int i=outOffsets[t]; i<outOffsets[t+1] && outEdges[i]<e; i++)
+			{
+				order_edges[k] = outEdges[i];
+				order_gaps[k++] = edge_times[outEdges[i]]-edge_times[e];
+			}
+		}
+	}
+
+	/*
+	Number of edges of a state, among those in stateEdges from offsets[si], numbered before edge e
+	*/
+	private static int countBefore(int[] stateEdges, int[] offsets, int si, int e)
+	{
+		int count = 0;
+		for(int i=offsets[si]; i<offsets[si+1] && stateEdges[i]<e; i++)
+			count++;
+		return count;
 	}
 	
 	/*
@@ -476,6 +619,243 @@ public class MatchingMachine
 		}
 	}
 	
+	/*
+	Build the matching machine with the order of the query nodes of least estimated search tree size,
+	i.e. the sum over the states of the estimated number of partial mappings up to each state.
+	All the connected orders are tried for small queries, larger ones take for each first node the order adding
+	every time the node with the least estimated candidates, and the best of them
+	@param costs: statistics of the target
+	*/
+	public void build(TemporalGraph ssg, CostModel costs)
+	{
+		CostOrder costOrder=new CostOrder(ssg,costs);
+		if(nof_sn <= EXHAUSTIVE_ORDER_NODES)
+			costOrder.search(0,new int[nof_sn],new boolean[nof_sn],1,0);
+		else
+			costOrder.greedy();
+		estimated_nodes=new double[nof_sn];
+		boolean[] mapped=new boolean[nof_sn];
+		double size=1;
+		for(int si=0; si<nof_sn; si++)
+		{
+			int n=costOrder.bestOrder[si];
+			size*=costOrder.branching(n,mapped);
+			estimated_nodes[si]=size;
+			mapped[n]=true;
+			map_state_to_node[si]=n;
+			map_node_to_state[n]=si;
+		}
+		//Parent of each node: its first neighbor in the order
+		TIntHashSet[] outAdiacs=ssg.getOutAdjList();
+		TIntHashSet[] inAdiacs=ssg.getInAdjList();
+		int[] t_parent_node=new int[nof_sn];
+		MamaParentType[] t_parent_type=new MamaParentType[nof_sn];
+		for(int si=0; si<nof_sn; si++)
+		{
+			int n=map_state_to_node[si];
+			t_parent_node[n]=-1;
+			t_parent_type[n]=MamaParentType.PARENTTYPE_NULL;
+			for(int sj=0; sj<si && t_parent_node[n] == -1; sj++)
+			{
+				int m=map_state_to_node[sj];
+				if(outAdiacs[m].contains(n))
+				{
+					t_parent_node[n]=m;
+					t_parent_type[n]=MamaParentType.PARENTTYPE_OUT;
+				}
+				else if(inAdiacs[m].contains(n))
+				{
+					t_parent_node[n]=m;
+					t_parent_type[n]=MamaParentType.PARENTTYPE_IN;
+				}
+			}
+		}
+		buildEdges(ssg,t_parent_node,t_parent_type);
+	}
+
+	/*
+	Search of the order of the query nodes with the least estimated search tree size
+	*/
+	private final class CostOrder
+	{
+		private final CostModel costs;
+		//Query edges without self loops, with the times of their contacts
+		private final int[] edgeSources;
+		private final int[] edgeTargets;
+		private final int[][] edgeTimes;
+		private int[] bestOrder;
+		private double bestCost=Double.MAX_VALUE;
+		//Branching of each node for each set of mapped nodes, as a bit mask, 0 if not computed yet. Only for small queries
+		private double[] branchings;
+
+		CostOrder(TemporalGraph ssg, CostModel costs)
+		{
+			this.costs=costs;
+			TIntObjectHashMap<Contact>[] outAdiacsTimes=ssg.getOutAdjListTimes();
+			int numEdges=0;
+			for(int n=0; n<nof_sn; n++)
+				numEdges+=outAdiacsTimes[n].size();
+			edgeSources=new int[numEdges];
+			edgeTargets=new int[numEdges];
+			edgeTimes=new int[numEdges][];
+			int e=0;
+			for(int n=0; n<nof_sn; n++)
+			{
+				TIntObjectIterator<Contact> it=outAdiacsTimes[n].iterator();
+				while(it.hasNext())
+				{
+					it.advance();
+					if(it.key() == n)
+						continue;
+					Contact contact=it.value();
+					edgeSources[e]=n;
+					edgeTargets[e]=it.key();
+					edgeTimes[e]=new int[contact.numContacts()];
+					for(int k=0; k<edgeTimes[e].length; k++)
+						edgeTimes[e][k]=contact.getTime(k);
+					e++;
+				}
+			}
+		}
+
+		/*
+		Estimated number of candidates of node v passing the checks for each partial mapping of the mapped nodes.
+		The candidates are the neighbors of the mapped neighbor of v with the lowest average degree;
+		the domain of v and every other edge towards mapped nodes keep a fraction of them, as does every pair
+		of contacts of adjacent edges, one of them incident to v, with the ordering of their times to respect:
+		deltaFraction if they are within delta and a half otherwise
+		*/
+		double branching(int v, boolean[] mapped)
+		{
+			double candidates=Double.MAX_VALUE;
+			double fraction=costs.domainSizes[v]/costs.numTargetNodes;
+			boolean connected=false;
+			for(int e=0; e<edgeSources.length; e++)
+			{
+				double degree;
+				if(edgeSources[e] == v && mapped[edgeTargets[e]])
+					degree=costs.inDegrees[edgeTargets[e]];
+				else if(edgeTargets[e] == v && mapped[edgeSources[e]])
+					degree=costs.outDegrees[edgeSources[e]];
+				else
+					continue;
+				connected=true;
+				candidates=Math.min(candidates,degree);
+				fraction*=degree/costs.numTargetNodes;
+				//Temporal constraints with the other edges of its endpoints already mapped, or incident to v and counted before
+				for(int f=0; f<edgeSources.length; f++)
+				{
+					boolean adjacent=edgeSources[f] == edgeSources[e] || edgeSources[f] == edgeTargets[e]
+							|| edgeTargets[f] == edgeSources[e] || edgeTargets[f] == edgeTargets[e];
+					boolean before=(edgeSources[f] == v || edgeTargets[f] == v) ? f < e && (mapped[edgeSources[f]] || mapped[edgeTargets[f]])
+							: mapped[edgeSources[f]] && mapped[edgeTargets[f]];
+					if(f == e || !adjacent || !before)
+						continue;
+					for(int te : edgeTimes[e])
+						for(int tf : edgeTimes[f])
+							if(te != tf)
+								fraction*=Math.abs(te-tf) <= costs.delta ? costs.deltaFraction : 0.5;
+				}
+			}
+			if(!connected)
+				return costs.domainSizes[v];
+			//The fraction of the neighbor range giving the candidates is not a filter
+			return candidates*fraction/(candidates/costs.numTargetNodes);
+		}
+
+		private boolean hasMappedNeighbor(int v, boolean[] mapped)
+		{
+			for(int e=0; e<edgeSources.length; e++)
+				if((edgeSources[e] == v && mapped[edgeTargets[e]]) || (edgeTargets[e] == v && mapped[edgeSources[e]]))
+					return true;
+			return false;
+		}
+
+		/*
+		Try all the orders extending order[0..k-1], where every node after the first of its connected component
+		has a neighbor before it, keeping the one of least cost
+		@param size: estimated number of partial mappings of order[0..k-1]
+		@param cost: estimated search tree size of order[0..k-1]
+		*/
+		void search(int k, int[] order, boolean[] mapped, double size, double cost)
+		{
+			if(branchings == null)
+				branchings=new double[nof_sn<<nof_sn];
+			if(cost >= bestCost)
+				return;
+			if(k == nof_sn)
+			{
+				bestCost=cost;
+				bestOrder=order.clone();
+				return;
+			}
+			boolean connected=false;
+			for(int v=0; v<nof_sn && !connected; v++)
+				connected=!mapped[v] && hasMappedNeighbor(v,mapped);
+			for(int v=0; v<nof_sn; v++)
+			{
+				if(mapped[v] || (connected && !hasMappedNeighbor(v,mapped)))
+					continue;
+				int mask=0;
+				for(int j=0; j<k; j++)
+					mask|=1<<order[j];
+				int key=(mask*nof_sn)+v;
+				if(branchings[key] == 0)
+					branchings[key]=Math.max(Double.MIN_VALUE,branching(v,mapped));
+				double next=size*branchings[key];
+				order[k]=v;
+				mapped[v]=true;
+				search(k+1,order,mapped,next,cost+next);
+				mapped[v]=false;
+			}
+		}
+
+		/*
+		For each first node, add every time the connected node with the least estimated candidates,
+		keeping the order of least cost
+		*/
+		void greedy()
+		{
+			for(int first=0; first<nof_sn; first++)
+			{
+				int[] order=new int[nof_sn];
+				boolean[] mapped=new boolean[nof_sn];
+				double size=costs.domainSizes[first];
+				double cost=size;
+				order[0]=first;
+				mapped[first]=true;
+				for(int k=1; k<nof_sn; k++)
+				{
+					int best=-1;
+					double bestBranching=Double.MAX_VALUE;
+					boolean bestConnected=false;
+					for(int v=0; v<nof_sn; v++)
+					{
+						if(mapped[v])
+							continue;
+						boolean connected=hasMappedNeighbor(v,mapped);
+						double branching=branching(v,mapped);
+						if(best == -1 || (connected && !bestConnected) || (connected == bestConnected && branching < bestBranching))
+						{
+							best=v;
+							bestBranching=branching;
+							bestConnected=connected;
+						}
+					}
+					size*=bestBranching;
+					cost+=size;
+					order[k]=best;
+					mapped[best]=true;
+				}
+				if(cost < bestCost)
+				{
+					bestCost=cost;
+					bestOrder=order;
+				}
+			}
+		}
+	}
+
 	private int wcompare(int i, int j, int[][] weights)
 	{
 		for(int w=0; w<3; w++)
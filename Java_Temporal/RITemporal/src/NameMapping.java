@@ -1,9 +0,0 @@
-
-public class NameMapping {
-	int map;
-	String name;
-	public NameMapping(int map, String name) {
-		this.map = map;
-		this.name = name;
-	}
-}
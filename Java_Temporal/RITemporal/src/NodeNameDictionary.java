@@ -0,0 +1,272 @@
+/*
+Dictionary from node names to dense ids 0..size()-1, assigned in order of insertion.
+Names are stored one after the other as UTF-8 bytes in a single arena, and found through an open addressing table
+of ids compared on the full name, so different names never share an id.
+Memory is the arena plus 8 bytes for each name (arena offset and hash) plus 6 to 11 bytes of table for each name.
+*/
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class NodeNameDictionary
+{
+	//UTF-8 bytes of all the names, name i in positions offsets[i]..offsets[i+1]-1
+	private byte[] arena;
+	private int[] offsets;
+	//Hash of each name
+	private int[] hashes;
+	//Open addressing table of ids + 1, 0 for empty slots. Its length is a power of two
+	private int[] table;
+	private int size;
+
+	/*
+	Constructor
+	*/
+	public NodeNameDictionary()
+	{
+		this(16);
+	}
+
+	/*
+	Constructor
+	@param expectedNames: number of names to allocate space for
+	*/
+	public NodeNameDictionary(int expectedNames)
+	{
+		int capacity=Math.max(expectedNames,16);
+		arena=new byte[8*capacity];
+		offsets=new int[capacity+1];
+		hashes=new int[capacity];
+		table=new int[tableLength(capacity)];
+	}
+
+	/*
+	Smallest power of two table keeping the load factor under 3/4
+	*/
+	private static int tableLength(int names)
+	{
+		int length=16;
+		while(4L*names > 3L*length)
+			length*=2;
+		return length;
+	}
+
+	/*
+	Id of a name, adding it to the dictionary if it is new
+	*/
+	public int getOrAdd(String name)
+	{
+		if(!isAscii(name))
+		{
+			byte[] bytes=name.getBytes(StandardCharsets.UTF_8);
+			return getOrAdd(ByteBuffer.wrap(bytes),0,bytes.length);
+		}
+		int hash=hashAscii(name);
+		int slot=find(name,hash);
+		if(table[slot]!=0)
+			return table[slot]-1;
+		int length=name.length();
+		int start=reserve(length);
+		for(int i=0;i<length;i++)
+			arena[start+i]=(byte)name.charAt(i);
+		return add(slot,hash,length);
+	}
+
+	/*
+	Id of the name with UTF-8 bytes in positions start..start+length-1 of a buffer, adding it if it is new.
+	The buffer is only read, so names can be added from a memory mapped file without copies
+	*/
+	public int getOrAdd(ByteBuffer bytes, int start, int length)
+	{
+		int hash=hash(bytes,start,length);
+		int slot=find(bytes,start,length,hash);
+		if(table[slot]!=0)
+			return table[slot]-1;
+		int begin=reserve(length);
+		bytes.get(start,arena,begin,length);
+		return add(slot,hash,length);
+	}
+
+	/*
+	Id of a name, -1 if the name is not in the dictionary
+	*/
+	public int get(String name)
+	{
+		if(!isAscii(name))
+		{
+			byte[] bytes=name.getBytes(StandardCharsets.UTF_8);
+			ByteBuffer buffer=ByteBuffer.wrap(bytes);
+			return table[find(buffer,0,bytes.length,hash(buffer,0,bytes.length))]-1;
+		}
+		return table[find(name,hashAscii(name))]-1;
+	}
+
+	/*
+	Name with a given id
+	*/
+	public String name(int id)
+	{
+		return new String(arena,offsets[id],offsets[id+1]-offsets[id],StandardCharsets.UTF_8);
+	}
+
+	/*
+	Number of names, i.e. the next id to assign
+	*/
+	public int size()
+	{
+		return size;
+	}
+
+	/*
+	Number of bytes of the UTF-8 encoding of all the names
+	*/
+	public int arenaLength()
+	{
+		return offsets[size];
+	}
+
+	/*
+	UTF-8 bytes of all the names and their offsets, name i in positions offsets[i]..offsets[i+1]-1.
+	They are shared with the dictionary and must not be modified
+	*/
+	public byte[] getArena()
+	{
+		return arena;
+	}
+
+	public int[] getOffsets()
+	{
+		return offsets;
+	}
+
+	/*
+	Estimated heap size of the dictionary, in bytes
+	*/
+	public long estimatedBytes()
+	{
+		return arena.length+4L*(offsets.length+hashes.length+table.length)+5*16;
+	}
+
+	private static boolean isAscii(String name)
+	{
+		for(int i=0;i<name.length();i++)
+			if(name.charAt(i)>=0x80)
+				return false;
+		return true;
+	}
+
+	/*
+	FNV-1a hash of the UTF-8 bytes of a name. For ASCII names the bytes are the chars
+	*/
+	private static int hashAscii(String name)
+	{
+		int hash=0x811c9dc5;
+		for(int i=0;i<name.length();i++)
+			hash=(hash^name.charAt(i))*0x01000193;
+		return hash;
+	}
+
+	private static int hash(ByteBuffer bytes, int start, int length)
+	{
+		int hash=0x811c9dc5;
+		for(int i=start;i<start+length;i++)
+			hash=(hash^(bytes.get(i) & 0xff))*0x01000193;
+		return hash;
+	}
+
+	/*
+	Slot of an ASCII name, or the empty slot where it has to be added
+	*/
+	private int find(String name, int hash)
+	{
+		int mask=table.length-1;
+		int length=name.length();
+		for(int slot=(hash^(hash>>>16)) & mask;;slot=(slot+1) & mask)
+		{
+			int id=table[slot]-1;
+			if(id<0)
+				return slot;
+			if(hashes[id]!=hash || offsets[id+1]-offsets[id]!=length)
+				continue;
+			int begin=offsets[id];
+			int i=0;
+			while(i<length && arena[begin+i]==(byte)name.charAt(i))
+				i++;
+			if(i==length)
+				return slot;
+		}
+	}
+
+	/*
+	Slot of a name given as UTF-8 bytes, or the empty slot where it has to be added
+	*/
+	private int find(ByteBuffer bytes, int start, int length, int hash)
+	{
+		int mask=table.length-1;
+		for(int slot=(hash^(hash>>>16)) & mask;;slot=(slot+1) & mask)
+		{
+			int id=table[slot]-1;
+			if(id<0)
+				return slot;
+			if(hashes[id]!=hash || offsets[id+1]-offsets[id]!=length)
+				continue;
+			int begin=offsets[id];
+			int i=0;
+			while(i<length && arena[begin+i]==bytes.get(start+i))
+				i++;
+			if(i==length)
+				return slot;
+		}
+	}
+
+	/*
+	Make room in the arena for a new name of length bytes
+	@return position of the first byte of the new name
+	*/
+	private int reserve(int length)
+	{
+		int begin=offsets[size];
+		if((long)begin+length > Integer.MAX_VALUE-8)
+			throw new IllegalStateException("Node names exceed "+(Integer.MAX_VALUE-8)+" bytes");
+		if(begin+length > arena.length)
+			arena=Arrays.copyOf(arena,(int)Math.min(Integer.MAX_VALUE-8,Math.max(2L*arena.length,(long)begin+length)));
+		return begin;
+	}
+
+	/*
+	Add the name of length bytes just copied in the arena, in an empty slot
+	*/
+	private int add(int slot, int hash, int length)
+	{
+		int id=size;
+		if(id==hashes.length)
+		{
+			hashes=Arrays.copyOf(hashes,2*id);
+			offsets=Arrays.copyOf(offsets,2*id+1);
+		}
+		offsets[id+1]=offsets[id]+length;
+		hashes[id]=hash;
+		table[slot]=id+1;
+		size++;
+		if(4L*size > 3L*table.length)
+			rehash();
+		return id;
+	}
+
+	/*
+	Double the table, placing the ids again using their stored hashes
+	*/
+	private void rehash()
+	{
+		table=new int[2*table.length];
+		int mask=table.length-1;
+		for(int id=0;id<size;id++)
+		{
+			int slot=(hashes[id]^(hashes[id]>>>16)) & mask;
+			while(table[slot]!=0)
+				slot=(slot+1) & mask;
+			table[slot]=id+1;
+		}
+	}
+}
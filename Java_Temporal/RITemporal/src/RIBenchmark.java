@@ -0,0 +1,377 @@
+/*
+MAIN CLASS
+Benchmarks of the hot paths of temporal matching and of full solves on generated targets.
+Each benchmark is run for some warmup iterations, whose results are discarded so that the JIT compiler reaches
+a steady state, and then for some measured iterations. Every iteration repeats the benchmark for a given time
+and measures the average time per operation; results report mean, standard deviation, minimum and maximum over
+the measured iterations. Operations return a value which is accumulated in a volatile field, so that their work
+can not be removed as dead code.
+Garbage collections and their time during the measured iterations are reported too, with the bytes allocated
+per operation by the benchmark thread (not by the workers of parallel benchmarks).
+*/
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+
+public class RIBenchmark
+{
+	//Operation under measurement, run returns a value depending on the results of the ops operations it executes
+	private interface Operation
+	{
+		long run();
+	}
+
+	private static final class Benchmark
+	{
+		final String name;
+		//Number of operations executed by each run
+		final int ops;
+		final Operation operation;
+
+		Benchmark(String name, int ops, Operation operation)
+		{
+			this.name=name;
+			this.ops=ops;
+			this.operation=operation;
+		}
+	}
+
+	//Results of the measured iterations of a benchmark
+	private static final class Measurement
+	{
+		//Average time per operation of each iteration, in nanoseconds
+		final double[] times;
+		//Garbage collections, time they took in milliseconds and bytes allocated by the benchmark thread per operation
+		long collections;
+		long collectionTime;
+		double allocatedBytes;
+
+		Measurement(int iterations)
+		{
+			times=new double[iterations];
+		}
+	}
+
+	//Values returned by the operations are accumulated here
+	private static volatile long blackhole;
+
+	/*
+	Main method
+	@param args: values of input parameters
+	*/
+	public static void main(String[] args)
+	{
+		//Warmup and measured iterations, and duration of each iteration in milliseconds
+		int warmup=5;
+		int iterations=10;
+		int iterationTime=500;
+		//Only benchmarks whose name contains filter are run
+		String filter="";
+		String outputFile="benchmark.csv";
+		int delta=1000;
+		long seed=42;
+		int i;
+		for(i=0;i<args.length;i++)
+		{
+			switch(args[i])
+			{
+				case "-w" -> warmup=Integer.parseInt(args[++i]);
+				case "-i" -> iterations=Integer.parseInt(args[++i]);
+				case "-t" -> iterationTime=Integer.parseInt(args[++i]);
+				case "-b" -> filter=args[++i];
+				case "-o" -> outputFile=args[++i];
+				case "-d" -> delta=Integer.parseInt(args[++i]);
+				case "-s" -> seed=Long.parseLong(args[++i]);
+				default -> {
+					System.out.println("Error! Unrecognizable command '"+args[i]+"'");
+					printHelp();
+					System.exit(1);
+				}
+			}
+		}
+
+		Vector<Benchmark> benchmarks=new Vector<>();
+		addMicrobenchmarks(benchmarks,delta,seed);
+		addMacrobenchmarks(benchmarks,delta,seed);
+
+		StringBuilder csv=new StringBuilder("benchmark,iterations,ops,mean (ns/op),stddev (ns/op),min (ns/op),max (ns/op),"+
+				"gc collections,gc time (ms),allocated (bytes/op)\n");
+		for(Benchmark benchmark : benchmarks)
+		{
+			if(!benchmark.name.contains(filter))
+				continue;
+			Measurement measurement=measure(benchmark,warmup,iterations,iterationTime);
+			double[] times=measurement.times;
+			double mean=0;
+			for(double time : times)
+				mean+=time;
+			mean/=times.length;
+			double variance=0;
+			for(double time : times)
+				variance+=(time-mean)*(time-mean);
+			double stddev=times.length > 1 ? Math.sqrt(variance/(times.length-1)) : 0;
+			Arrays.sort(times);
+			System.out.printf("%-40s %14.1f ns/op  +- %10.1f  [%.1f, %.1f]  gc: %d (%d ms)  %.1f B/op%n",benchmark.name,mean,stddev,
+					times[0],times[times.length-1],measurement.collections,measurement.collectionTime,measurement.allocatedBytes);
+			csv.append(benchmark.name).append(',').append(times.length).append(',').append(benchmark.ops).append(',')
+				.append(mean).append(',').append(stddev).append(',').append(times[0]).append(',').append(times[times.length-1]).append(',')
+				.append(measurement.collections).append(',').append(measurement.collectionTime).append(',').append(measurement.allocatedBytes).append('\n');
+		}
+		try
+		{
+			BufferedWriter bw=new BufferedWriter(new FileWriter(outputFile));
+			bw.write(csv.toString());
+			bw.close();
+			System.out.println("Results written in "+outputFile);
+		}
+		catch(Exception e)
+		{
+			System.out.println(e.getMessage());
+		}
+	}
+
+	/*
+	Run a benchmark for the warmup iterations and then for the measured ones
+	@return average time per operation of each measured iteration, and garbage collections of the measured iterations
+	*/
+	private static Measurement measure(Benchmark benchmark, int warmup, int iterations, int iterationTime)
+	{
+		Measurement measurement=new Measurement(iterations);
+		double[] times=measurement.times;
+		long iterationNanos=iterationTime*1000000L;
+		long measuredOps=0;
+		for(int it=0; it<warmup+iterations; it++)
+		{
+			if(it == warmup)
+			{
+				measurement.collections=-collections();
+				measurement.collectionTime=-collectionTime();
+				measurement.allocatedBytes=-allocatedBytes();
+			}
+			long ops=0;
+			long value=0;
+			long inizio=System.nanoTime();
+			long elapsed;
+			do
+			{
+				value+=benchmark.operation.run();
+				ops+=benchmark.ops;
+				elapsed=System.nanoTime()-inizio;
+			}
+			while(elapsed < iterationNanos);
+			blackhole+=value;
+			if(it >= warmup)
+			{
+				times[it-warmup]=(double)elapsed/ops;
+				measuredOps+=ops;
+			}
+		}
+		measurement.collections+=collections();
+		measurement.collectionTime+=collectionTime();
+		measurement.allocatedBytes=(measurement.allocatedBytes+allocatedBytes())/Math.max(1,measuredOps);
+		return measurement;
+	}
+
+	/*
+	Garbage collections since the start of the JVM, over all collectors
+	*/
+	private static long collections()
+	{
+		long count=0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			count+=Math.max(0,gc.getCollectionCount());
+		return count;
+	}
+
+	/*
+	Time spent in garbage collection since the start of the JVM, in milliseconds
+	*/
+	private static long collectionTime()
+	{
+		long time=0;
+		for(GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			time+=Math.max(0,gc.getCollectionTime());
+		return time;
+	}
+
+	/*
+	Bytes allocated by the current thread, 0 if the JVM does not measure them
+	*/
+	private static long allocatedBytes()
+	{
+		if(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads && threads.isThreadAllocatedMemoryEnabled())
+			return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		return 0;
+	}
+
+	/*
+	Query used by the benchmarks: 4 nodes and 5 edges, the query of the tests
+	*/
+	private static TemporalGraph benchmarkQuery()
+	{
+		TemporalGraph query=new TemporalGraph(true,4);
+		query.addEdge(0,1,1).addEdge(0,2,1).addEdge(1,3,3).addEdge(3,2,4).addEdge(1,2,8);
+		return query;
+	}
+
+	/*
+	Random Erdos-Renyi target with one contact per pair and uniform times, so pairs can still be drawn more than once
+	*/
+	private static TemporalGraphCSR randomTarget(int numNodes, int numContacts, int timeSpan, long seed)
+	{
+		return new TemporalGraphGenerator(numNodes,numContacts,seed).setTimeSpan(timeSpan).generateCSR();
+	}
+
+	/*
+	Benchmarks of the single checks made by domain computation and search, on a target of 10^5 contacts
+	*/
+	private static void addMicrobenchmarks(Vector<Benchmark> benchmarks, int delta, long seed)
+	{
+		int batch=1024;
+		TemporalGraph query=benchmarkQuery();
+		TemporalGraphCSR csr=randomTarget(10000,100000,1000000,seed);
+		Random random=new Random(seed);
+
+		int[] outTimes=csr.getOutTimes();
+		int[] dests=new int[batch];
+		int[] times=new int[batch];
+		for(int k=0; k<batch; k++)
+		{
+			int node=random.nextInt(csr.getNumNodes());
+			while(csr.outDegree(node) == 0)
+				node=random.nextInt(csr.getNumNodes());
+			int edge=csr.getOutOffsets()[node]+random.nextInt(csr.outDegree(node));
+			dests[k]=csr.getOutNeighbors()[edge];
+			times[k]=outTimes[csr.outContactBegin(edge)];
+		}
+		int[] signature=new int[6];
+		benchmarks.add(new Benchmark("nodeTemporalStructure",batch,() -> {
+			long sum=0;
+			for(int k=0; k<batch; k++)
+			{
+				csr.nodeTemporalStructure(dests[k],times[k],delta,signature,0);
+				sum+=signature[0]+signature[5];
+			}
+			return sum;
+		}));
+
+		int[] signatures=csr.contactSignatures(delta,false);
+		int[] first=new int[batch];
+		int[] second=new int[batch];
+		for(int k=0; k<batch; k++)
+		{
+			first[k]=6*random.nextInt(outTimes.length);
+			second[k]=6*random.nextInt(outTimes.length);
+		}
+		benchmarks.add(new Benchmark("controlTemporals",batch,() -> {
+			long count=0;
+			for(int k=0; k<batch; k++)
+				if(TemporalGraph.controlTemporals(signatures,first[k],signatures,second[k]))
+					count++;
+			return count;
+		}));
+
+		int[] nodes=new int[batch];
+		for(int k=0; k<batch; k++)
+			nodes[k]=random.nextInt(csr.getNumNodes());
+		int numQueryNodes=query.getNumNodes();
+		benchmarks.add(new Benchmark("testCompatibility",batch*numQueryNodes,() -> {
+			long count=0;
+			for(int k=0; k<batch; k++)
+				for(int j=0; j<numQueryNodes; j++)
+					if(query.testCompatibility(csr,j,nodes[k],delta))
+						count++;
+			return count;
+		}));
+
+		//Full mappings of the last state: half of them are matches, the others have a random last node
+		RISolverTemporal solver=new RISolverTemporal(csr,false);
+		MatchingMachine mama=new MatchingMachine(query);
+		MatchSink.FirstK matches=new MatchSink.FirstK(batch/2);
+		solver.solve(query,delta,matches);
+		Vector<int[]> found=matches.getNodes();
+		int[][] solutions=new int[batch][mama.nof_sn];
+		for(int k=0; k<batch; k++)
+		{
+			for(int si=0; si<mama.nof_sn; si++)
+				solutions[k][si]=found.isEmpty() ? random.nextInt(csr.getNumNodes()) : found.get(k%found.size())[mama.map_state_to_node[si]];
+			if(k%2 == 1)
+				solutions[k][mama.nof_sn-1]=random.nextInt(csr.getNumNodes());
+		}
+		int lastState=mama.nof_sn-1;
+		benchmarks.add(new Benchmark("edgesCheck",batch,() -> {
+			long count=0;
+			for(int k=0; k<batch; k++)
+				if(solver.edgesCheck(lastState,solutions[k]))
+					count++;
+			return count;
+		}));
+
+		benchmarks.add(new Benchmark("MatchingMachine.build",1,() -> new MatchingMachine(query).nof_sn));
+		benchmarks.add(new Benchmark("getSymmetryConditions",1,() -> query.getSymmetryConditions(delta).length));
+	}
+
+	/*
+	Full solves, sequential and parallel, on random targets of increasing size with 10 contacts per node
+	and a time span of 10 time units per contact, the domain phase alone on the largest target with 1, 2, 4 and 8 threads,
+	and a solve of a path query on a Barabasi-Albert target
+	*/
+	private static void addMacrobenchmarks(Vector<Benchmark> benchmarks, int delta, long seed)
+	{
+		TemporalGraph query=benchmarkQuery();
+		int numThreads=Runtime.getRuntime().availableProcessors();
+		for(int numContacts : new int[] {10000,100000,1000000})
+		{
+			RISolverTemporal solver=new RISolverTemporal(randomTarget(numContacts/10,numContacts,10*numContacts,seed),false);
+			benchmarks.add(new Benchmark("solve/"+numContacts,1,() -> {
+				solver.solve(query,delta);
+				return solver.getNumMatches();
+			}));
+			benchmarks.add(new Benchmark("solveParallel/"+numContacts,1,() -> {
+				solver.solveParallel(query,delta,numThreads);
+				return solver.getNumMatches();
+			}));
+			if(numContacts == 1000000)
+				for(int threads : new int[] {1,2,4,8})
+				{
+					//Workers of the pool are daemon threads, so the pool is left running
+					ForkJoinPool pool=new ForkJoinPool(threads);
+					benchmarks.add(new Benchmark("domains/"+numContacts+"/"+threads,1,() -> solver.computeDomains(query,delta,pool)));
+				}
+		}
+		//Search bound solve: a path query on a target with hubs, where most of the time goes in descending into states
+		TemporalGraph path=new TemporalGraph(true,4);
+		path.addEdge(0,1,1).addEdge(1,2,2).addEdge(2,3,3);
+		TemporalGraphCSR hubs=new TemporalGraphGenerator(1000,10000,seed).setTopology(TemporalGraphGenerator.Topology.BARABASI_ALBERT)
+				.setTimeSpan(100000).generateCSR();
+		RISolverTemporal pathSolver=new RISolverTemporal(hubs,false);
+		benchmarks.add(new Benchmark("solvePath/ba/10000",1,() -> {
+			pathSolver.solve(path,delta);
+			return pathSolver.getNumMatches();
+		}));
+	}
+
+	/*
+	Print help string for RIBenchmark usage
+	*/
+	public static void printHelp()
+	{
+		String help="Usage: java -cp ./out RIBenchmark [-w <warmupIterations> -i <iterations> -t <iterationMillis> "+
+				"-b <filter> -o <resultsFile> -d <delta> -s <seed>]\n\n";
+		help+="OPTIONAL PARAMETERS:\n";
+		help+="-w\tWarmup iterations, not measured (default=5)\n";
+		help+="-i\tMeasured iterations (default=10)\n";
+		help+="-t\tDuration of each iteration in milliseconds (default=500)\n";
+		help+="-b\tRun only the benchmarks whose name contains this string (default=all)\n";
+		help+="-o\tOutput CSV file where results will be saved (default=benchmark.csv)\n";
+		help+="-d\tDelta of the queries (default=1000)\n";
+		help+="-s\tSeed of the generated targets (default=42)\n";
+		System.out.println(help);
+	}
+}
@@ -4,6 +4,7 @@ Run RI algorithm for finding the number of occurrences of a query graph in the t
 */
 
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.FileWriter;
 import java.util.Vector;
 
@@ -26,13 +27,33 @@ public class RIBoxResults
 	    //String nomeDataset = "alreadymapped/SFHH-conf-sensor.edges";
 	    //String nomeDataset = "alreadymapped/edit-enwikibooks.edges";
 	    
-	    TemporalGraph net= fmnet.readGraph("data/"+ nomeDataset + ".edges");
-	    
-	    String fileTarget = "/media/josura/E094955094952A54/programmi/universita/university-sad/tesi/realtesi/temporal_subgraph_isomorphism/mydata/"+ nomeDataset + ".gdf";
-    	fmnet.writeGraph(fileTarget,net);
-    
-	    
-	    RISolverTemporal rinet = new RISolverTemporal(net, false);
+	    //The target is parsed from the edge list only the first time, then loaded from its binary snapshot
+	    //until the edge list is modified after the snapshot was written
+	    String sourceTarget = "data/"+ nomeDataset + ".edges";
+	    String binaryTarget = "data/"+ nomeDataset + ".tgb";
+	    File sourceFile = new File(sourceTarget);
+	    File binaryFile = new File(binaryTarget);
+	    TemporalGraphCSR frozenNet;
+	    long inizioLoad=System.currentTimeMillis();
+	    if(binaryFile.exists() && (!sourceFile.exists() || binaryFile.lastModified() >= sourceFile.lastModified()))
+	    {
+	    	frozenNet = fmnet.readBinaryGraph(binaryTarget);
+	    }
+	    else
+	    {
+	    	TemporalGraph net= fmnet.readGraph(sourceTarget);
+	    	
+	    	String fileTarget = "/media/josura/E094955094952A54/programmi/universita/university-sad/tesi/realtesi/temporal_subgraph_isomorphism/mydata/"+ nomeDataset + ".gdf";
+	    	fmnet.writeGraph(fileTarget,net);
+	    	
+	    	frozenNet = net.freeze();
+	    	long numEdges = Math.max(1, net.getNumedges());
+	    	System.out.println("Memory per edge: " + net.estimatedBytes()/numEdges + " bytes (adjacency hash lists), "
+	    			+ frozenNet.estimatedBytes()/numEdges + " bytes (CSR snapshot)");
+	    	fmnet.writeBinaryGraph(binaryTarget,frozenNet);
+	    }
+	    System.out.println("Target loaded in "+(System.currentTimeMillis()-inizioLoad)+" ms");
+	    RISolverTemporal rinet = new RISolverTemporal(frozenNet, false);
 	    
 	    //List of counts, one for each read query
         Vector<Long> setCounts=new Vector<>();
@@ -43,21 +64,13 @@ public class RIBoxResults
         Vector<TemporalGraph> setQueries = fm.readQueries(queriesFile);
         String outputFile="risultatiBox"+nomeDataset+".csv";
         
+        //All the queries share the target preprocessing and run concurrently
+        System.out.println("Matching "+setQueries.size()+" queries...");
+        rinet.solveBatch(setQueries, 1000, Runtime.getRuntime().availableProcessors(), setCounts, setRunningTimes);
         for(int i=0;i<setQueries.size();i++)
-        {
-            System.out.println("Matching query "+(i+1)+"...");
-            long inizio=System.currentTimeMillis();
-            TemporalGraph q=setQueries.get(i);
-            rinet.solve(q,1000);
-            long numOccs=rinet.getNumMatches();
-            setCounts.add(numOccs);
-            double fine=System.currentTimeMillis();
-            double totalTime=(fine-inizio)/1000;
-            setRunningTimes.add(totalTime);
-            System.out.println("Done! Found "+numOccs+" occurrences");
-        }
+            System.out.println("Query "+(i+1)+": found "+setCounts.get(i)+" occurrences in "+setRunningTimes.get(i)+" secs");
         
-        fmnet.writeResults(setQueries, net, setCounts, setRunningTimes, outputFile);
+        fmnet.writeResults(setQueries, frozenNet, setCounts, setRunningTimes, outputFile);
 	    
         
         
@@ -33,7 +33,11 @@ public class RIIncrementalQuery
     	fmnet.writeGraph(fileTarget,net);
     
 	    
-	    RISolverTemporal rinet = new RISolverTemporal(net, false);
+	    TemporalGraphCSR frozenNet = net.freeze();
+	    long numEdges = Math.max(1, net.getNumedges());
+	    System.out.println("Memory per edge: " + net.estimatedBytes()/numEdges + " bytes (adjacency hash lists), "
+	    		+ frozenNet.estimatedBytes()/numEdges + " bytes (CSR snapshot)");
+	    RISolverTemporal rinet = new RISolverTemporal(frozenNet, false);
 	    
 	    //List of counts, one for each read query
         Vector<Long> setCounts=new Vector<>();
@@ -47,6 +47,14 @@ public class RISolver
 		TIntHashSet[] targetInAdjLists=targetGraph.getInAdjList();
 		int nofTargetNodes=targetGraph.getNumNodes();
 		int i, j;
+		//Neighbors of each target node, copied from the adjacency sets once so that descending into a state allocates nothing
+		int[][] targetOutNeighbors=new int[nofTargetNodes][];
+		int[][] targetInNeighbors=new int[nofTargetNodes][];
+		for(i=0; i<nofTargetNodes; i++)
+		{
+			targetOutNeighbors[i]=targetOutAdjLists[i].toArray();
+			targetInNeighbors[i]=targetInAdjLists[i].toArray();
+		}
 		int nof_sn=mama.nof_sn;
 		int[] parent_state=mama.parent_state;
 		MamaParentType[] parent_type=mama.parent_type;
@@ -137,9 +145,9 @@ public class RISolver
 					{
 						//Build the set of target candidate nodes for matching with the new query node
 						if(parent_type[sip1] == MamaParentType.PARENTTYPE_IN)
-							candidates[sip1] = targetInAdjLists[solution[parent_state[sip1]]].toArray();
+							candidates[sip1] = targetInNeighbors[solution[parent_state[sip1]]];
 						else
-							candidates[sip1] = targetOutAdjLists[solution[parent_state[sip1]]].toArray();
+							candidates[sip1] = targetOutNeighbors[solution[parent_state[sip1]]];
 					}
 					//Start from the first target candidate node for that query node
 					candidatesIT[si+1]=-1;
@@ -2,27 +2,72 @@
 RI matching algorithm
 */
 
-import gnu.trove.iterator.TIntIterator;
+import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.set.hash.TIntHashSet;
 
+import java.util.Arrays;
 import java.util.BitSet;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.IntStream;
+
+import jdk.jfr.FlightRecorder;
 
 public class RISolverTemporal
 {
-	//Matching state machine
-	private MatchingMachine mama;
-	//Target graph
-	private final TemporalGraph targetGraph;
+	//Target graph, as an immutable CSR snapshot
+	private final TemporalGraphCSR targetGraph;
 	//Number of matches of query graph into target graph
 	private long numMatches;
 	//Induced or not?
 	private final boolean induced;
+	//Query of the last solve
+	private Query query;
+	//Temporal signatures of target contacts, 6 values for each out contact of the CSR snapshot
+	private int[] targetSignatures;
+	//Delta used to compute targetSignatures
+	private int signaturesDelta;
+	//Names of the target nodes used to print matches, null to print ids
+	private NodeNameDictionary targetNames;
+	//Number of queued tasks of a worker below which parallel search is split further
+	private static final int SPLIT_SURPLUS = 2;
+	//Bindings of the contacts of a query node tried by the order check of partial mappings, more are left to the final check
+	private static final int ORDER_CHECK_BINDINGS = 64;
+	//Number of target nodes of each range of parallel domain computation, a multiple of 64
+	private static final int DOMAIN_CHUNK = 4096;
+	//Count candidates, rejections, backtracks and time of each state during search?
+	private boolean collectStatistics;
+	//Order the states by estimated search tree size instead of by query structure only?
+	private boolean costBasedOrder;
+	//Time span of the target contacts, -1 until it is computed
+	private long targetTimeSpan=-1;
+	//Searches running in any solver, whose progress is reported by the periodic SolveEvents.Progress event
+	private static final Set<Query> runningSearches=ConcurrentHashMap.newKeySet();
+
+	static
+	{
+		FlightRecorder.addPeriodicEvent(SolveEvents.Progress.class,RISolverTemporal::reportProgress);
+	}
 	
 	/*
 	Constructor
 	*/
 	public RISolverTemporal(TemporalGraph targetGraph, boolean induced)
+	{
+		this(targetGraph.freeze(),induced);
+	}
+
+	/*
+	Constructor for an already frozen target graph
+	*/
+	public RISolverTemporal(TemporalGraphCSR targetGraph, boolean induced)
 	{
 		this.targetGraph=targetGraph;
 		this.induced=induced;
@@ -30,284 +75,1969 @@ public class RISolverTemporal
 	}
 	
 	/*
-	Compute the number of matches of query graph into target graph
+	Set the names of the target nodes, as read by FileManagerTemporal, used to print matches
+	*/
+	public void setTargetNames(NodeNameDictionary targetNames)
+	{
+		this.targetNames=targetNames;
+	}
+
+	/*
+	Collect search statistics in the following solves, see getSearchStatistics.
+	Counters are kept by each search stack, so they cost a few increments per candidate and two clock readings per step
+	*/
+	public void setCollectStatistics(boolean collectStatistics)
+	{
+		this.collectStatistics=collectStatistics;
+	}
+
+	/*
+	Order the states of the following solves by estimated search tree size, using domain sizes, average degrees
+	of the target nodes in the domains and the temporal constraints between query contacts, see MatchingMachine.CostModel.
+	Estimated partial mappings of each state are given by getEstimatedNodes and, next to the actual ones, by getSearchStatistics
+	*/
+	public void setCostBasedOrder(boolean costBasedOrder)
+	{
+		this.costBasedOrder=costBasedOrder;
+	}
+
+	/*
+	Print a mapping between query and target nodes
 	*/
 	void printsolution(int[] sol){
 		for(int i =0;i<sol.length;i++) {
-			System.out.println("(" + mama.map_state_to_node[i] + ", " + sol[i] + ")");
+			String target = targetNames != null && sol[i] < targetNames.size() ? targetNames.name(sol[i]) : String.valueOf(sol[i]);
+			System.out.println("(" + query.mama.map_state_to_node[i] + ", " + target + ")");
 			
 		}
 		System.out.println();
 	}
+
+	/*
+	Compute the number of matches of query graph into target graph
+	*/
 	public void solve(TemporalGraph queryGraph, int delta)
+	{
+		solve(queryGraph,delta,(MatchSink)null);
+	}
+
+	/*
+	Enumerate the matches of query graph into target graph, passing each of them to a sink.
+	The search stops as soon as the sink returns false, and numMatches counts the matches passed to the sink
+	@param sink: receiver of the matches, null to only count them
+	*/
+	public void solve(TemporalGraph queryGraph, int delta, MatchSink sink)
 	{
 		numMatches=0;
+		query=new Query(queryGraph,delta,sink,null);
+		numMatches=query.search();
+	}
+
+	/*
+	Compute the number of matches of query graph into target graph whose contacts all have time in [tStart,tEnd].
+	Domains only keep target nodes with enough contacts in the interval and the search only binds contacts in it,
+	the target graph is not copied
+	*/
+	public void solve(TemporalGraph queryGraph, int delta, long tStart, long tEnd)
+	{
+		solve(queryGraph,delta,tStart,tEnd,null);
+	}
+
+	/*
+	Enumerate the matches of query graph into target graph whose contacts all have time in [tStart,tEnd], see solve with a sink
+	@param sink: receiver of the matches, null to only count them
+	*/
+	public void solve(TemporalGraph queryGraph, int delta, long tStart, long tEnd, MatchSink sink)
+	{
+		numMatches=0;
+		query=new Query(queryGraph,delta,sink,null,tStart,tEnd);
+		numMatches=query.search();
+	}
 
-		//Compute compatibility domains
-		BitSet[] domains=computeDomains(queryGraph,delta);
-		//Build the state space representation machine
-		this.mama=new MatchingMachine(queryGraph);
-		//Compute the set of query symmetry breaking conditions
-		Vector<Integer>[] symmCond=queryGraph.getSymmetryConditions(delta);
-
-		TIntHashSet[] targetOutAdjLists=targetGraph.getOutAdjList();
-		TIntHashSet[] targetInAdjLists=targetGraph.getInAdjList();
-		int nofTargetNodes=targetGraph.getNumNodes();
-		int i, j;
-		int nof_sn=mama.nof_sn;
-		int[] parent_state=mama.parent_state;
-		MamaParentType[] parent_type=mama.parent_type;
-		//Iterators for the set of target candidate nodes for matching
-		//in order to know from which candidate the search should proceed when doing backtracking
-		//One iterator for each query node
-		int[] candidatesIT=new int[nof_sn];
-		//Set of target candidate nodes for matching, one for each query node
-		int[][] candidates = new int[nof_sn][];
-		//Partial mapping between query and target nodes
-		int[] solution = new int[nof_sn];
-		for(i=0; i<nof_sn; i++)
-			solution[i] = -1;
-		//Set of already mapped target nodes
-		boolean[] matched = new boolean[nofTargetNodes];
-
-		//Build the set of initial candidate nodes,
-		//i.e. the set of target nodes in the domain of the first query node to process
-		for(i=0; i<nof_sn; i++)
-		{
-			if(parent_type[i] == MamaParentType.PARENTTYPE_NULL)
-			{
-				int n = mama.map_state_to_node[i];
-				candidates[i]=new int[domains[n].cardinality()];
-				int k = 0;
-				for(j = domains[n].nextSetBit(0); j >= 0; j = domains[n].nextSetBit(j+1))
+	/*
+	Compute the number of matches of query graph into target graph window by window, with numThreads threads.
+	The timeline of the target is split into windows of 2*width time units starting every width time units,
+	so that consecutive windows overlap by width, and windows are searched in parallel.
+	Each window starts from the domains of the whole target, keeps the nodes with enough contacts in the window
+	and only binds contacts in it. A match is counted by the window whose first width time units contain its earliest contact,
+	so every match spanning at most width time units is counted exactly once, longer ones only if they fit in that window:
+	the count equals the one of solve only if no match is longer than width.
+	The domains of the last solve are those of the whole target
+	@param width: see windowWidth
+	*/
+	public void solveWindows(TemporalGraph queryGraph, int delta, long width, int numThreads)
+	{
+		if(width < 1)
+			throw new IllegalArgumentException("Window width must be positive: "+width);
+		numMatches=0;
+		ForkJoinPool pool=new ForkJoinPool(numThreads);
+		try
+		{
+			pool.submit(() -> precomputeSignatures(delta,true)).join();
+			Query base=new Query(queryGraph,delta,null,pool);
+			long[] nodesByTime=targetGraph.nodesByTime();
+			//Only windows owning a contact can own a match
+			long first=nodesByTime.length == 0 ? 0 : nodesByTime[0]>>32;
+			int numWindows=0;
+			long[] windowStarts=new long[16];
+			for(long key : nodesByTime)
+			{
+				long start=first+((key>>32)-first)/width*width;
+				if(numWindows == 0 || windowStarts[numWindows-1] != start)
 				{
-					candidates[i][k]=j;
-					k++;
+					if(numWindows == windowStarts.length)
+						windowStarts=Arrays.copyOf(windowStarts,2*numWindows);
+					windowStarts[numWindows++]=start;
 				}
-				candidatesIT[i]=-1;
-			}
-		}
-
-		int psi = -1;
-		int si = 0;
-		int ci;
-		int sip1;
-		while(si != -1)
-		{
-			if(psi >= si)
-				//Backtracking: remove mapping for currently processed query node
-				matched[solution[si]] = false;
-			ci = -1;
-			//Process match between currently processed query node and next candidate node
-			candidatesIT[si]++;
-			while(candidatesIT[si]<candidates[si].length)
-			{
-				ci = candidates[si][candidatesIT[si]];
-				//Add mapping
-				solution[si] = ci;
-				//Check if target node-query node mapping is feasible
-				if(!matched[ci]
-						&& domains[mama.map_state_to_node[si]].get(ci)
-						&& condCheck(si,solution,symmCond)
-						//TODO control on the subgraph and not on the full structure
-						&& edgesCheck(si,ci,solution,matched,queryGraph,delta)
-						)
-					break;
-				else
-					ci=-1;
-				//Mapping is not feasible, go on with next candidate
-				candidatesIT[si]++;
 			}
-			//No candidate target nodes can be mapped to the currently processed query node
-			//Do backtracking and go back to the previously processed query node
-			if(ci == -1)
+			long[] starts=windowStarts;
+			int windows=numWindows;
+			//Windows share the matching machine, so each worker reuses the same stack for all its windows
+			ThreadLocal<Query.SearchStack> stacks=ThreadLocal.withInitial(() -> base.new SearchStack());
+			SolveEvents.Search event=new SolveEvents.Search();
+			event.begin();
+			base.numWindows=windows;
+			base.windowsDone=new AtomicInteger();
+			base.searchStart=System.nanoTime();
+			runningSearches.add(base);
+			try
+			{
+				numMatches=pool.submit(() -> IntStream.range(0,windows).parallel()
+						.mapToLong(w -> {
+							long found=new Query(base,nodesByTime,starts[w],starts[w]+2*width-1,starts[w]+width).search(stacks.get());
+							base.windowsDone.incrementAndGet();
+							return found;
+						})
+						.sum()).join();
+			}
+			finally
+			{
+				runningSearches.remove(base);
+			}
+			base.commitSearchEvent(event,numThreads,windows,numMatches);
+			query=base;
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/*
+	Window width suggested for solveWindows: time span of the query contacts plus delta for each pair of consecutive contacts,
+	i.e. (number of query contacts - 1)*delta, as each contact of a match can follow the previous one by up to delta.
+	This is a heuristic, not a bound: the final check only compares how many contacts of a node are before,
+	within delta or beyond delta of each other, so a match with contacts beyond delta or not time respecting can be
+	arbitrarily long. solveWindows is exact only for the matches spanning at most the width
+	*/
+	public static long windowWidth(TemporalGraph queryGraph, int delta)
+	{
+		long min=Long.MAX_VALUE, max=Long.MIN_VALUE;
+		long numContacts=0;
+		for(int[] times : queryGraph.getOutTimesSorted())
+		{
+			if(times.length > 0)
+			{
+				min=Math.min(min,times[0]);
+				max=Math.max(max,times[times.length-1]);
+				numContacts+=times.length;
+			}
+		}
+		return min > max ? Math.max(1,delta) : Math.max(1,max-min+(numContacts-1)*delta);
+	}
+
+	/*
+	Compute the number of matches of query graph into target graph using numThreads worker threads
+	@param numThreads: number of threads of the ForkJoinPool running the search
+	*/
+	public void solveParallel(TemporalGraph queryGraph, int delta, int numThreads)
+	{
+		solveParallel(queryGraph,delta,numThreads,null);
+	}
+
+	/*
+	Enumerate the matches of query graph into target graph using numThreads worker threads, see solve with a sink
+	@param sink: thread safe receiver of the matches, null to only count them
+	*/
+	public void solveParallel(TemporalGraph queryGraph, int delta, int numThreads, MatchSink sink)
+	{
+		ForkJoinPool pool=new ForkJoinPool(numThreads);
+		try
+		{
+			solve(queryGraph,delta,pool,sink);
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/*
+	Compute the number of matches of query graph into target graph within a ForkJoinPool.
+	Work is split on the root candidates of the first state and, whenever the workers run out of tasks,
+	on the remaining candidates of the deepest non-leaf states.
+	@param pool: pool running the search
+	*/
+	public void solve(TemporalGraph queryGraph, int delta, ForkJoinPool pool)
+	{
+		solve(queryGraph,delta,pool,null);
+	}
+
+	/*
+	Enumerate the matches of query graph into target graph within a ForkJoinPool, see solve with a sink
+	@param sink: thread safe receiver of the matches, null to only count them
+	*/
+	public void solve(TemporalGraph queryGraph, int delta, ForkJoinPool pool, MatchSink sink)
+	{
+		numMatches=0;
+		pool.submit(() -> precomputeSignatures(delta,true)).join();
+		query=new Query(queryGraph,delta,sink,pool);
+		numMatches=query.search(pool);
+	}
+
+	/*
+	Compute the compatibility domains of a query, without arc consistency and search, within a ForkJoinPool.
+	Used by RIBenchmark to measure how the domain phase scales with the number of threads of the pool
+	@return sum of the sizes of the domains
+	*/
+	public long computeDomains(TemporalGraph queryGraph, int delta, ForkJoinPool pool)
+	{
+		pool.submit(() -> precomputeSignatures(delta,true)).join();
+		long size=0;
+		for(BitSet domain : new Query(queryGraph,delta,pool).domains)
+			size+=domain.cardinality();
+		return size;
+	}
+
+	/*
+	Compute the number of matches into target graph of each query of a batch.
+	Target signatures are computed once for the whole batch, then queries are searched concurrently
+	in a pool of numThreads threads, and the search of each query is split among idle workers as in solveParallel.
+	numMatches is not changed
+	@param queries: query graphs
+	@param numThreads: number of threads of the pool
+	@param counts: list where the number of matches of each query is added
+	@param runningTimes: list where the running time of each query, in seconds, is added.
+	Queries run concurrently, so their running times overlap
+	*/
+	public void solveBatch(Vector<TemporalGraph> queries, int delta, int numThreads, Vector<Long> counts, Vector<Double> runningTimes)
+	{
+		ForkJoinPool pool=new ForkJoinPool(numThreads);
+		try
+		{
+			pool.submit(() -> precomputeSignatures(delta,true)).join();
+			long[] queryMatches=new long[queries.size()];
+			double[] queryTimes=new double[queries.size()];
+			Vector<ForkJoinTask<?>> tasks=new Vector<>(queries.size());
+			for(int i=0; i<queries.size(); i++)
+			{
+				int qi=i;
+				tasks.add(pool.submit(() -> {
+					long inizio=System.nanoTime();
+					queryMatches[qi]=new Query(queries.get(qi),delta,null,pool).search(pool);
+					queryTimes[qi]=(System.nanoTime()-inizio)/1e9;
+				}));
+			}
+			for(ForkJoinTask<?> task : tasks)
+				task.join();
+			for(int i=0; i<queries.size(); i++)
+			{
+				counts.add(queryMatches[i]);
+				runningTimes.add(queryTimes[i]);
+			}
+		}
+		finally
+		{
+			pool.shutdown();
+		}
+	}
+
+	/*
+	Compute the temporal signatures of all target contacts for a given delta.
+	Signatures depend only on the target and delta, so they are computed again only when delta changes
+	@param parallel: compute signatures in parallel
+	@return signatures of the target contacts
+	*/
+	public synchronized int[] precomputeSignatures(int delta, boolean parallel)
+	{
+		if(targetSignatures==null || signaturesDelta!=delta)
+		{
+			targetSignatures=targetGraph.contactSignatures(delta,parallel);
+			signaturesDelta=delta;
+		}
+		return targetSignatures;
+	}
+
+	/*
+	Commit a progress event for each running search, called periodically by Flight Recorder while the event is enabled
+	*/
+	private static void reportProgress()
+	{
+		for(Query running : runningSearches)
+			running.reportProgress();
+	}
+
+	/*
+	Keep in values[0..size-1] the values also in sorted[begin..end-1], both sorted in ascending order without repetitions.
+	Each value is searched galloping from the position of the previous one, so a short list is intersected with a long one
+	in time logarithmic in the gaps between its values
+	@return number of values kept, at the beginning of values
+	*/
+	static int intersect(int[] values, int size, int[] sorted, int begin, int end)
+	{
+		int kept=0;
+		int pos=begin;
+		for(int k=0; k<size && pos < end; k++)
+		{
+			int v=values[k];
+			//Values before low are less than v, the first value not less than v is in [low,high]
+			int low=pos, high=pos, step=1;
+			while(high < end && sorted[high] < v)
+			{
+				low=high+1;
+				high+=step;
+				step<<=1;
+			}
+			int found=Arrays.binarySearch(sorted,low,Math.min(high+1,end),v);
+			if(found >= 0)
+			{
+				values[kept++]=v;
+				pos=found+1;
+			}
+			else
+				pos=-found-1;
+		}
+		return kept;
+	}
+
+	/*
+	Time span of the target contacts, computed once
+	*/
+	private synchronized long targetTimeSpan()
+	{
+		if(targetTimeSpan < 0)
+		{
+			long min=Long.MAX_VALUE, max=Long.MIN_VALUE;
+			for(int time : targetGraph.getOutTimes())
+			{
+				min=Math.min(min,time);
+				max=Math.max(max,time);
+			}
+			targetTimeSpan=min > max ? 0 : max-min;
+		}
+		return targetTimeSpan;
+	}
+
+	/*
+	Compute the delta conditions of an in contact with respect to a set of out contacts of the same node,
+	as TemporalGraph.testCompatibility: number of out contacts not time respecting, not respecting delta and respecting delta
+	@param x: time of the in contact
+	@param outContacts: out contacts of the node
+	@param times: time of each contact
+	@param conditions: array where the 3 values are stored
+	@param offset: position of the first value
+	*/
+	static void deltaConditions(int x, int[] outContacts, int[] times, int delta, int[] conditions, int offset)
+	{
+		int notTimeRespecting=0, deltaNotRespected=0, deltaRespected=0;
+		for(int c : outContacts)
+		{
+			int t=times[c];
+			if(x >= t)
+				notTimeRespecting++;
+			else if(t - x <= delta)
+				deltaRespected++;
+			else
+				deltaNotRespected++;
+		}
+		conditions[offset]=notTimeRespecting;
+		conditions[offset+1]=deltaNotRespected;
+		conditions[offset+2]=deltaRespected;
+	}
+
+	/*
+	Everything the search needs about one query: matching machine, domains, symmetry conditions, query contacts
+	and their signatures. Queries of a batch are searched concurrently, each one with its own Query
+	*/
+	private final class Query
+	{
+		//Matching state machine
+		private MatchingMachine mama;
+		//Query graph and delta
+		private final TemporalGraph queryGraph;
+		private final int delta;
+		//Compatibility domains of query nodes
+		private BitSet[] domains;
+		//Query symmetry breaking conditions
+		private Vector<Integer>[] symmCond;
+		//Symmetry breaking conditions checked at each state, see stateConditions
+		private int[][] stateConditions;
+		//Candidates of states without parent, i.e. target nodes in their domains
+		private int[][] rootCandidates;
+		//Query edges are numbered following the states: edges of state si are numbered from stateEdgeOffset[si]
+		private int[] stateEdgeOffset;
+		//Query contacts are numbered following the edges: contacts of edge e are numbered from edgeContactOffset[e]
+		private int[] edgeContactOffset;
+		//Time, source and target query node of each query contact
+		private int[] queryTimes;
+		private int[] queryContactSources;
+		private int[] queryContactTargets;
+		//Query edge of each query contact
+		private int[] queryContactEdges;
+		//Temporal signatures of the query contacts, 6 values for each contact
+		private int[] querySignatures;
+		//Query contacts entering and leaving the node of each state
+		private int[][] stateInContacts;
+		private int[][] stateOutContacts;
+		//Delta conditions of the in contacts of the node of each state, 3 values for each contact (see deltaConditions)
+		private int[][] stateInConditions;
+		//States whose query node has all its contacts mapped once each state is mapped, so that orderCheck can verify them
+		private int[][] stateCompletedStates;
+		//Do all query and target edges have a single contact? Then each query edge is bound to exactly one target contact
+		private boolean singleContacts;
+		//Scratch arrays of the public edgesCheck, allocated at its first call
+		private int[] checkEdgePositions;
+		private int[] checkContactTimes;
+		private boolean[] checkFixedContacts;
+		//Temporal signatures of target contacts for delta
+		private final int[] targetSignatures;
+		//Receiver of the matches, null to only count them
+		private final MatchSink sink;
+		//Set when the sink asks to stop the search
+		private volatile boolean stopped;
+		//Collect search statistics in the stacks?
+		private final boolean collectStatistics;
+		//Stacks created for the search, read by the progress event and by getSearchStatistics
+		private final Vector<SearchStack> searchStacks;
+		//Start of the search, as System.nanoTime
+		private long searchStart;
+		//Windows of solveWindows already searched and number of windows, windowsDone is null for a search on the whole target
+		private AtomicInteger windowsDone;
+		private int numWindows;
+		//Interval of the times of the target contacts the search can bind, and is it narrower than all times?
+		private final long tStart, tEnd;
+		private final boolean windowed;
+		//Matches are counted only if their earliest contact is before ownerEnd, so that overlapping windows count each once
+		private final long ownerEnd;
+		//Time spent computing the domains, in seconds, and number of threads used
+		private double domainTime;
+		private int domainThreads;
+		//Domain sizes before arc consistency, number of arcs revised and time spent on arc consistency and search, in seconds
+		private int[] initialDomainSizes;
+		private long refinementRevisions;
+		private double refinementTime;
+		private double searchTime;
+
+		/*
+		Compute domains, matching machine, symmetry breaking conditions and temporal signatures of a query graph
+		@param sink: receiver of the matches, null to only count them
+		@param pool: pool computing the domains, null to compute them on the calling thread
+		*/
+		Query(TemporalGraph queryGraph, int delta, MatchSink sink, ForkJoinPool pool)
+		{
+			this(queryGraph,delta,sink,pool,Long.MIN_VALUE,Long.MAX_VALUE);
+		}
+
+		/*
+		Query restricted to the target contacts with time in [tStart,tEnd]
+		*/
+		Query(TemporalGraph queryGraph, int delta, MatchSink sink, ForkJoinPool pool, long tStart, long tEnd)
+		{
+			this.queryGraph=queryGraph;
+			this.delta=delta;
+			this.sink=sink;
+			this.tStart=tStart;
+			this.tEnd=tEnd;
+			this.windowed=tStart != Long.MIN_VALUE || tEnd != Long.MAX_VALUE;
+			this.ownerEnd=Long.MAX_VALUE;
+			this.collectStatistics=RISolverTemporal.this.collectStatistics;
+			this.searchStacks=new Vector<>();
+			//Compute the temporal signatures of target contacts, used by domains and search
+			this.targetSignatures=precomputeSignatures(delta,false);
+			//Compute compatibility domains
+			SolveEvents.Domains domainsEvent=new SolveEvents.Domains();
+			domainsEvent.begin();
+			this.domains=computeDomains(pool);
+			commitDomainsEvent(domainsEvent);
+			//Build the state space representation machine
+			SolveEvents.MachineBuild machineEvent=new SolveEvents.MachineBuild();
+			machineEvent.begin();
+			this.mama=costBasedOrder ? new MatchingMachine(queryGraph,costModel()) : new MatchingMachine(queryGraph);
+			machineEvent.states=mama.nof_sn;
+			machineEvent.commit();
+			//Compute the set of query symmetry breaking conditions
+			SolveEvents.Symmetry symmetryEvent=new SolveEvents.Symmetry();
+			symmetryEvent.begin();
+			this.symmCond=queryGraph.getSymmetryConditions(delta);
+			for(Vector<Integer> conditions : symmCond)
+				symmetryEvent.conditions+=conditions.size();
+			this.stateConditions=stateConditions(symmCond);
+			symmetryEvent.commit();
+			//Compute the temporal signatures of query contacts
+			buildEdgeIndex();
+			querySignatures=new int[6*queryTimes.length];
+			for(int q=0; q<queryTimes.length; q++)
+				queryGraph.nodeTemporalStructure(queryContactTargets[q],queryTimes[q],delta,querySignatures,6*q);
+
+			buildRootCandidates();
+		}
+
+		/*
+		Query which only computes the domains before arc consistency, see computeDomains of RISolverTemporal
+		*/
+		Query(TemporalGraph queryGraph, int delta, ForkJoinPool pool)
+		{
+			this.queryGraph=queryGraph;
+			this.delta=delta;
+			this.sink=null;
+			this.tStart=Long.MIN_VALUE;
+			this.tEnd=Long.MAX_VALUE;
+			this.windowed=false;
+			this.ownerEnd=Long.MAX_VALUE;
+			this.collectStatistics=false;
+			this.searchStacks=new Vector<>();
+			this.targetSignatures=precomputeSignatures(delta,false);
+			this.domains=initialDomains(pool);
+		}
+
+		/*
+		Query on a window of the target timeline, sharing matching machine, symmetry conditions and signatures
+		with a query on the whole target. Domains are those of base restricted to the nodes with enough contacts
+		in [tStart,tEnd], refined again with arc consistency
+		@param nodesByTime: nodes of the target contacts sorted by time, see TemporalGraphCSR.nodesByTime
+		@param ownerEnd: only matches with the earliest contact before ownerEnd are counted
+		*/
+		Query(Query base, long[] nodesByTime, long tStart, long tEnd, long ownerEnd)
+		{
+			this.queryGraph=base.queryGraph;
+			this.delta=base.delta;
+			this.sink=null;
+			this.tStart=tStart;
+			this.tEnd=tEnd;
+			this.windowed=true;
+			this.ownerEnd=ownerEnd;
+			this.collectStatistics=base.collectStatistics;
+			this.searchStacks=base.searchStacks;
+			this.targetSignatures=base.targetSignatures;
+			this.mama=base.mama;
+			this.symmCond=base.symmCond;
+			this.stateConditions=base.stateConditions;
+			this.stateEdgeOffset=base.stateEdgeOffset;
+			this.edgeContactOffset=base.edgeContactOffset;
+			this.queryTimes=base.queryTimes;
+			this.queryContactSources=base.queryContactSources;
+			this.queryContactTargets=base.queryContactTargets;
+			this.queryContactEdges=base.queryContactEdges;
+			this.querySignatures=base.querySignatures;
+			this.stateInContacts=base.stateInContacts;
+			this.stateOutContacts=base.stateOutContacts;
+			this.stateInConditions=base.stateInConditions;
+			this.stateCompletedStates=base.stateCompletedStates;
+			this.singleContacts=base.singleContacts;
+
+			int numQueryNodes=queryGraph.getNumNodes();
+			domains=new BitSet[numQueryNodes];
+			for(int j=0; j<numQueryNodes; j++)
+				domains[j]=new BitSet();
+			//Nodes with a contact in the window, the keys of time tStart come after (tStart-1)<<32 | 0xffffffff
+			int k=-Arrays.binarySearch(nodesByTime,(tStart<<32)-1)-1;
+			TIntHashSet seen=new TIntHashSet();
+			for(; k<nodesByTime.length && nodesByTime[k]>>32 <= tEnd; k++)
+			{
+				int i=(int)nodesByTime[k];
+				if(!seen.add(i))
+					continue;
+				for(int j=0; j<numQueryNodes; j++)
+					if(base.domains[j].get(i) && windowContacts(j,i))
+						domains[j].set(i);
+			}
+			boolean empty=false;
+			for(int j=0; j<numQueryNodes; j++)
+				empty|=domains[j].isEmpty();
+			if(empty)
+			{
+				//No match in this window
+				for(int j=0; j<numQueryNodes; j++)
+					domains[j].clear();
+				initialDomainSizes=new int[numQueryNodes];
+			}
+			else
+				refineTimed(domains);
+			buildRootCandidates();
+		}
+
+		/*
+		Statistics of the domains and of the target for a cost-based order of the states
+		*/
+		private MatchingMachine.CostModel costModel()
+		{
+			int numQueryNodes=domains.length;
+			double[] sizes=new double[numQueryNodes];
+			double[] outDegrees=new double[numQueryNodes];
+			double[] inDegrees=new double[numQueryNodes];
+			for(int j=0; j<numQueryNodes; j++)
+			{
+				long out=0, in=0;
+				for(int i=domains[j].nextSetBit(0); i >= 0; i=domains[j].nextSetBit(i+1))
+				{
+					out+=targetGraph.outDegree(i);
+					in+=targetGraph.inDegree(i);
+				}
+				sizes[j]=domains[j].cardinality();
+				outDegrees[j]=sizes[j] == 0 ? 0 : out/sizes[j];
+				inDegrees[j]=sizes[j] == 0 ? 0 : in/sizes[j];
+			}
+			double deltaFraction=Math.min(1,(2.0*delta+1)/(targetTimeSpan()+1));
+			return new MatchingMachine.CostModel(sizes,outDegrees,inDegrees,targetGraph.getNumNodes(),delta,deltaFraction);
+		}
+
+		/*
+		Commit the event of domain computation, if it is enabled
+		*/
+		private void commitDomainsEvent(SolveEvents.Domains event)
+		{
+			event.end();
+			if(!event.shouldCommit())
+				return;
+			event.queryNodes=domains.length;
+			event.targetNodes=targetGraph.getNumNodes();
+			event.threads=domainThreads;
+			for(int i=0; i<domains.length; i++)
+			{
+				event.initialSize+=initialDomainSizes[i];
+				event.size+=domains[i].cardinality();
+			}
+			event.revisions=refinementRevisions;
+			event.commit();
+		}
+
+		/*
+		Commit the event of a search, if it is enabled
+		*/
+		private void commitSearchEvent(SolveEvents.Search event, int threads, int windows, long matches)
+		{
+			event.end();
+			if(!event.shouldCommit())
+				return;
+			event.threads=threads;
+			event.windows=windows;
+			event.rootCandidates=rootCandidates[0].length;
+			for(SearchStack stack : searchStacks)
+				event.verifiedMappings+=stack.verified;
+			event.matches=matches;
+			event.commit();
+		}
+
+		/*
+		Commit a progress event for this search. Counters of the stacks are read while the workers update them,
+		so the values are estimates
+		*/
+		private void reportProgress()
+		{
+			long explored=0, matches=0;
+			int[] workers=new int[mama.nof_sn];
+			int active=0;
+			for(int k=0; k<searchStacks.size(); k++)
 			{
-				psi = si;
-				si--;
+				SearchStack stack=searchStacks.get(k);
+				explored+=stack.rootExplored;
+				matches+=stack.totalMatches;
+				int depth=stack.depth;
+				if(depth >= 0)
+				{
+					workers[depth]++;
+					active++;
+				}
 			}
+			SolveEvents.Progress event=new SolveEvents.Progress();
+			if(windowsDone != null)
+				event.exploredFraction=numWindows == 0 ? 1 : (double)windowsDone.get()/numWindows;
 			else
+				event.exploredFraction=rootCandidates[0].length == 0 ? 1 : Math.min(1,(double)explored/rootCandidates[0].length);
+			event.matches=matches;
+			event.matchesPerSecond=matches/Math.max(1e-9,(System.nanoTime()-searchStart)/1e9);
+			event.activeWorkers=active;
+			StringBuilder distribution=new StringBuilder();
+			for(int si=0; si<workers.length; si++)
+				distribution.append(si == 0 ? "" : " ").append(si).append(':').append(workers[si]);
+			event.depthDistribution=distribution.toString();
+			event.commit();
+		}
+
+		/*
+		Build the set of initial candidate nodes,
+		i.e. the set of target nodes in the domain of the first query node to process
+		*/
+		private void buildRootCandidates()
+		{
+			int nof_sn=mama.nof_sn;
+			rootCandidates=new int[nof_sn][];
+			for(int i=0; i<nof_sn; i++)
+			{
+				if(mama.parent_type[i] == MamaParentType.PARENTTYPE_NULL)
+				{
+					BitSet domain = domains[mama.map_state_to_node[i]];
+					rootCandidates[i]=new int[domain.cardinality()];
+					int k = 0;
+					for(int j = domain.nextSetBit(0); j >= 0; j = domain.nextSetBit(j+1))
+					{
+						rootCandidates[i][k]=j;
+						k++;
+					}
+				}
+			}
+		}
+
+		/*
+		Compute the compatibility domains for each query node, refined with arc consistency
+		*/
+		private BitSet[] computeDomains(ForkJoinPool pool)
+		{
+			BitSet[] domains=initialDomains(pool);
+			refineTimed(domains);
+			return domains;
+		}
+
+		/*
+		Compute the compatibility domains for each query node, before arc consistency
+		Each domain is represented as a BitSet with numTargetNodes bits.
+		Bit 1 in position i means that target node i is in the compatibility domain of that query node.
+		With a pool, target nodes are split in ranges of DOMAIN_CHUNK nodes processed in parallel:
+		ranges are aligned to 64 nodes, so each worker writes its own words of the domains and no lock is needed
+		@param pool: pool computing the domains, null to compute them on the calling thread
+		 */
+		private BitSet[] initialDomains(ForkJoinPool pool)
+		{
+			int numQueryNodes=queryGraph.getNumNodes();
+			int numTargetNodes=targetGraph.getNumNodes();
+			int i;
+			long[][] words=new long[numQueryNodes][(numTargetNodes+63)>>>6];
+			int numChunks=(numTargetNodes+DOMAIN_CHUNK-1)/DOMAIN_CHUNK;
+			long inizio=System.nanoTime();
+			if(pool == null)
+				computeDomains(words,0,numTargetNodes);
+			else
+			{
+				Runnable chunks=() -> IntStream.range(0,numChunks).parallel()
+						.forEach(c -> computeDomains(words,c*DOMAIN_CHUNK,Math.min(numTargetNodes,(c+1)*DOMAIN_CHUNK)));
+				if(ForkJoinTask.getPool() == pool)
+					chunks.run();
+				else
+					pool.submit(chunks).join();
+			}
+			domainTime=(System.nanoTime()-inizio)/1e9;
+			domainThreads=pool == null ? 1 : pool.getParallelism();
+			BitSet[] domains=new BitSet[numQueryNodes];
+			for(i=0;i<domains.length;i++)
+				domains[i]=BitSet.valueOf(words[i]);
+			return domains;
+		}
+
+		/*
+		Refine domains with arc consistency over the query edges, recording their sizes before refinement and the time it takes
+		*/
+		private void refineTimed(BitSet[] domains)
+		{
+			initialDomainSizes=new int[domains.length];
+			for(int i=0;i<domains.length;i++)
+				initialDomainSizes[i]=domains[i].cardinality();
+			long inizio=System.nanoTime();
+			refineDomains(domains);
+			refinementTime=(System.nanoTime()-inizio)/1e9;
+		}
+
+		/*
+		Does target node i have at least as many in and out contacts in [tStart,tEnd] as query node j?
+		*/
+		private boolean windowContacts(int j, int i)
+		{
+			return queryGraph.getInTimesSorted()[j].length <= targetGraph.countInContacts(i,tStart,tEnd)
+					&& queryGraph.getOutTimesSorted()[j].length <= targetGraph.countOutContacts(i,tStart,tEnd);
+		}
+
+		/*
+		Positions of the first contact in [tStart,tEnd] of the target out edge in position pos and after the last one
+		*/
+		private int contactBegin(int pos)
+		{
+			return windowed ? targetGraph.outContactBegin(pos,tStart) : targetGraph.outContactBegin(pos);
+		}
+
+		private int contactEnd(int pos)
+		{
+			return windowed ? targetGraph.outContactEnd(pos,tEnd) : targetGraph.outContactEnd(pos);
+		}
+
+		/*
+		Is the match with the given contact times counted by this query, i.e. is its earliest contact before ownerEnd?
+		*/
+		private boolean owned(int[] contactTimes)
+		{
+			if(ownerEnd == Long.MAX_VALUE)
+				return true;
+			for(int time : contactTimes)
+				if(time < ownerEnd)
+					return true;
+			return false;
+		}
+
+		/*
+		Find the query nodes compatible with target nodes from..to-1 and set their bits in the domain words
+		*/
+		private void computeDomains(long[][] words, int from, int to)
+		{
+			TIntHashSet[] queryOutAdjLists=queryGraph.getOutAdjList();
+			TIntHashSet[] queryInAdjLists=queryGraph.getInAdjList();
+			for(int i=from;i<to;i++)
+			{
+				//Find compatible query nodes and update domains
+				for(int j=0;j<words.length;j++)
+				{
+					if(queryOutAdjLists[j].size()<=targetGraph.outDegree(i)
+							&& queryInAdjLists[j].size()<=targetGraph.inDegree(i)
+							&& (!windowed || windowContacts(j,i))
+							&& queryGraph.testCompatibility(targetGraph,j,i,delta)
+							)
+					{
+						words[j][i>>>6]|=1L<<i;
+						//System.out.println(j+"-"+i);
+					}
+				}
+			}
+		}
+
+		/*
+		Arc consistency (AC-3) over the query edges, up to a fixpoint.
+		Each query edge a->b gives two arcs: target node ra stays in the domain of a only if it has an out edge ra->rb
+		with rb in the domain of b, and rb stays in the domain of b only if it has such an in edge from the domain of a.
+		Target edges count only if they are temporally compatible with the query edge, as checked by edgesCheck:
+		at least as many contacts, and the signature of each query contact dominated by the signature of a target contact.
+		An arc is revised by building the set of supported nodes and intersecting it with the domain;
+		when a domain shrinks, the arcs which use it as support are queued again
+		*/
+		private void refineDomains(BitSet[] domains)
+		{
+			int numQueryNodes=queryGraph.getNumNodes();
+			int numTargetNodes=targetGraph.getNumNodes();
+			TIntObjectHashMap<Contact>[] queryOutTimes=queryGraph.getOutAdjListTimes();
+			int numEdges=0;
+			for(int a=0; a<numQueryNodes; a++)
+				numEdges+=queryOutTimes[a].size();
+			int[] edgeSource=new int[numEdges];
+			int[] edgeTarget=new int[numEdges];
+			//Target out edges compatible with each query edge, by position in the CSR snapshot
+			BitSet[] compatibleEdges=new BitSet[numEdges];
+			int[] readerCount=new int[numQueryNodes];
+			int e=0;
+			for(int a=0; a<numQueryNodes; a++)
+			{
+				TIntObjectIterator<Contact> it=queryOutTimes[a].iterator();
+				while(it.hasNext())
+				{
+					it.advance();
+					edgeSource[e]=a;
+					edgeTarget[e]=it.key();
+					compatibleEdges[e]=compatibleEdges(a,it.value(),domains[a]);
+					readerCount[a]++;
+					readerCount[it.key()]++;
+					e++;
+				}
+			}
+			//Arc 2e revises the source of edge e using the domain of its target, arc 2e+1 the target using the source.
+			//readers[x] are the arcs using the domain of x as support
+			int[][] readers=new int[numQueryNodes][];
+			for(int x=0; x<numQueryNodes; x++)
+				readers[x]=new int[readerCount[x]];
+			Arrays.fill(readerCount,0);
+			for(e=0; e<numEdges; e++)
+			{
+				readers[edgeTarget[e]][readerCount[edgeTarget[e]]++]=2*e;
+				readers[edgeSource[e]][readerCount[edgeSource[e]]++]=2*e+1;
+			}
+
+			int[] outOffsets=targetGraph.getOutOffsets();
+			int[] outNeighbors=targetGraph.getOutNeighbors();
+			int[] queue=new int[2*numEdges];
+			boolean[] queued=new boolean[2*numEdges];
+			int head=0, size=2*numEdges;
+			for(int arc=0; arc<2*numEdges; arc++)
+			{
+				queue[arc]=arc;
+				queued[arc]=true;
+			}
+			BitSet supported=new BitSet(numTargetNodes);
+			refinementRevisions=0;
+			while(size>0)
 			{
-				//Mapping is feasible
-				if(si == nof_sn -1)
+				int arc=queue[head];
+				head=(head+1)%queue.length;
+				size--;
+				queued[arc]=false;
+				refinementRevisions++;
+				e=arc>>1;
+				boolean reviseSource=(arc&1)==0;
+				BitSet sourceDomain=domains[edgeSource[e]];
+				BitSet targetDomain=domains[edgeTarget[e]];
+				BitSet compatible=compatibleEdges[e];
+				supported.clear();
+				for(int ra=sourceDomain.nextSetBit(0); ra>=0; ra=sourceDomain.nextSetBit(ra+1))
 				{
-					//TODO final temporal structure control need to be optimized
-					Vector<Integer> nodes = new Vector<>(queryGraph.getNumNodes());
-					Vector<Integer> mapping = new Vector<>(queryGraph.getNumNodes());
-					TIntHashSet[] edges = new TIntHashSet[queryGraph.getNumNodes()];
-					TIntHashSet[] outEdgesQuery = queryGraph.getOutAdjList();
-					for(int index=0;index<queryGraph.getNumNodes();index++)
-			        {
-			            edges[index] = new TIntHashSet();
-			        }
-					for(int index = 0; index < solution.length;index++) {
-						nodes.add(solution[index]);
-						mapping.add(index);
+					for(int p=compatible.nextSetBit(outOffsets[ra]); p>=0 && p<outOffsets[ra+1]; p=compatible.nextSetBit(p+1))
+					{
+						if(targetDomain.get(outNeighbors[p]))
+						{
+							if(reviseSource)
+							{
+								supported.set(ra);
+								break;
+							}
+							supported.set(outNeighbors[p]);
+						}
 					}
-					for(int index = 0; index < solution.length;index++) {
-						nodes.set(mama.map_state_to_node[index], solution[index]);
-						mapping.set(index, mama.map_state_to_node[index]);
-						
-						TIntIterator iteratorEdges = outEdgesQuery[mama.map_state_to_node[index]].iterator();
-						while(iteratorEdges.hasNext()) {
-							int element = iteratorEdges.next();
-							int source = nodes.indexOf(solution[index]);
-							int destination = nodes.indexOf(solution[mama.map_node_to_state[element]]);
-							if (source >=0 && destination >=0) edges[source].add(destination);
+				}
+				int revised=reviseSource ? edgeSource[e] : edgeTarget[e];
+				int before=domains[revised].cardinality();
+				domains[revised].and(supported);
+				if(domains[revised].cardinality()<before)
+				{
+					for(int reader : readers[revised])
+					{
+						if(!queued[reader])
+						{
+							queue[(head+size)%queue.length]=reader;
+							queued[reader]=true;
+							size++;
 						}
 					}
-					TemporalGraph subtarget = targetGraph.subgraphSelectedEdges(nodes,edges);
-					
-					//control if the mapping is right and temporal structure is the same
-					if(queryGraph.testMap(subtarget, mapping, delta)) {
-						//All query nodes have been mapped. Update the number of occurrences found
-						numMatches++;
-						//printsolution(solution);
-						if(numMatches%10000000==0)
-							System.out.println("Found "+numMatches+" occurrences...");
+				}
+			}
+		}
+
+		/*
+		Positions of the target out edges leaving the domain of a query node which are temporally compatible
+		with a query edge, as checked by edgesCheck
+		@param a: source of the query edge
+		@param contact: contacts of the query edge
+		@param sourceDomain: domain of a
+		*/
+		private BitSet compatibleEdges(int a, Contact contact, BitSet sourceDomain)
+		{
+			int[] outOffsets=targetGraph.getOutOffsets();
+			int numContacts=contact.numContacts();
+			int[] signatures=new int[6*numContacts];
+			for(int k=0; k<numContacts; k++)
+				queryGraph.nodeTemporalStructure(contact.node,contact.getTime(k),delta,signatures,6*k);
+			BitSet compatible=new BitSet(targetGraph.getOutNeighbors().length);
+			for(int ra=sourceDomain.nextSetBit(0); ra>=0; ra=sourceDomain.nextSetBit(ra+1))
+			{
+				for(int p=outOffsets[ra]; p<outOffsets[ra+1]; p++)
+				{
+					int begin=contactBegin(p);
+					int end=contactEnd(p);
+					boolean ok=end-begin>=numContacts;
+					for(int k=0; k<numContacts && ok; k++)
+					{
+						int c=begin;
+						while(c<end && !TemporalGraph.controlTemporals(signatures,6*k,targetSignatures,6*c))
+							c++;
+						ok=c<end;
+					}
+					if(ok)
+						compatible.set(p);
+				}
+			}
+			return compatible;
+		}
+
+		/*
+		Number the query edges of the matching machine and their contacts and index the contacts by incident state,
+		computing the delta conditions of the query used by verifyMapping and the states verified by orderCheck.
+		Contact times are looked up by the pair of query nodes of each edge, so that every contact of an edge is bound
+		*/
+		private void buildEdgeIndex()
+		{
+			int nof_sn=mama.nof_sn;
+			TIntObjectHashMap<Contact>[] outTimes=queryGraph.getOutAdjListTimes();
+			stateEdgeOffset=mama.edge_offsets;
+			Contact[] edgeContacts=new Contact[stateEdgeOffset[nof_sn]];
+			edgeContactOffset=new int[edgeContacts.length+1];
+			int[] inCount=new int[nof_sn];
+			int[] outCount=new int[nof_sn];
+			singleContacts=targetGraph.hasSingleContacts();
+			for(int e=0; e<edgeContacts.length; e++)
+			{
+				int source=mama.edge_sources[e];
+				int target=mama.edge_targets[e];
+				edgeContacts[e]=outTimes[mama.map_state_to_node[source]].get(mama.map_state_to_node[target]);
+				int contacts=edgeContacts[e].numContacts();
+				edgeContactOffset[e+1]=edgeContactOffset[e]+contacts;
+				outCount[source]+=contacts;
+				inCount[target]+=contacts;
+				if(contacts > 1)
+					singleContacts=false;
+			}
+			queryTimes=new int[edgeContactOffset[edgeContacts.length]];
+			queryContactSources=new int[queryTimes.length];
+			queryContactTargets=new int[queryTimes.length];
+			queryContactEdges=new int[queryTimes.length];
+			stateInContacts=new int[nof_sn][];
+			stateOutContacts=new int[nof_sn][];
+			for(int si=0; si<nof_sn; si++)
+			{
+				stateInContacts[si]=new int[inCount[si]];
+				stateOutContacts[si]=new int[outCount[si]];
+				inCount[si]=0;
+				outCount[si]=0;
+			}
+			for(int e=0; e<edgeContacts.length; e++)
+			{
+				int source=mama.edge_sources[e];
+				int target=mama.edge_targets[e];
+				for(int q=edgeContactOffset[e]; q<edgeContactOffset[e+1]; q++)
+				{
+					queryTimes[q]=edgeContacts[e].getTime(q-edgeContactOffset[e]);
+					queryContactSources[q]=mama.map_state_to_node[source];
+					queryContactTargets[q]=mama.map_state_to_node[target];
+					queryContactEdges[q]=e;
+					stateOutContacts[source][outCount[source]++]=q;
+					stateInContacts[target][inCount[target]++]=q;
+				}
+			}
+			stateInConditions=new int[nof_sn][];
+			for(int si=0; si<nof_sn; si++)
+			{
+				stateInConditions[si]=new int[3*stateInContacts[si].length];
+				for(int k=0; k<stateInContacts[si].length; k++)
+					deltaConditions(queryTimes[stateInContacts[si][k]],stateOutContacts[si],queryTimes,delta,stateInConditions[si],3*k);
+			}
+			//The contacts of the node of a state are all mapped at the last state among the state and its query neighbors.
+			//Nodes without in or out contacts have no delta conditions to verify
+			int[] completedAt=new int[nof_sn];
+			for(int si=0; si<nof_sn; si++)
+				completedAt[si]=si;
+			for(int e=0; e<edgeContacts.length; e++)
+			{
+				int source=mama.edge_sources[e];
+				int target=mama.edge_targets[e];
+				completedAt[source]=Math.max(completedAt[source],target);
+				completedAt[target]=Math.max(completedAt[target],source);
+			}
+			int[] completedCount=new int[nof_sn];
+			for(int si=0; si<nof_sn; si++)
+				if(stateInContacts[si].length > 0 && stateOutContacts[si].length > 0)
+					completedCount[completedAt[si]]++;
+			stateCompletedStates=new int[nof_sn][];
+			for(int si=0; si<nof_sn; si++)
+			{
+				stateCompletedStates[si]=new int[completedCount[si]];
+				completedCount[si]=0;
+			}
+			for(int si=0; si<nof_sn; si++)
+				if(stateInContacts[si].length > 0 && stateOutContacts[si].length > 0)
+					stateCompletedStates[completedAt[si]][completedCount[completedAt[si]]++]=si;
+		}
+
+		/*
+		Search sequentially
+		@return number of matches
+		*/
+		long search()
+		{
+			SolveEvents.Search event=new SolveEvents.Search();
+			event.begin();
+			SearchStack stack=new SearchStack();
+			searchStart=System.nanoTime();
+			runningSearches.add(this);
+			long found;
+			try
+			{
+				found=search(stack);
+			}
+			finally
+			{
+				runningSearches.remove(this);
+			}
+			commitSearchEvent(event,1,0,found);
+			return found;
+		}
+
+		/*
+		Search sequentially on a stack not in use. Queries sharing the matching machine, as the windows of solveWindows,
+		can share stacks
+		@return number of matches
+		*/
+		long search(SearchStack stack)
+		{
+			long inizio=System.nanoTime();
+			for(int i=1; i<mama.nof_sn; i++)
+				if(rootCandidates[i] != null)
+					stack.candidates[i]=rootCandidates[i];
+			stack.numMatches=0;
+			stack.init(0,rootCandidates[0],0,rootCandidates[0].length);
+			search(stack,0,null);
+			searchTime=(System.nanoTime()-inizio)/1e9;
+			return stack.numMatches;
+		}
+
+		/*
+		Search within a ForkJoinPool, splitting work on the root candidates of the first state and, whenever the workers
+		run out of tasks, on the remaining candidates of the deepest non-leaf states.
+		When called by a worker of the pool, the calling thread takes part in the search
+		@return number of matches
+		*/
+		long search(ForkJoinPool pool)
+		{
+			SolveEvents.Search event=new SolveEvents.Search();
+			event.begin();
+			long inizio=System.nanoTime();
+			LongAdder counter=new LongAdder();
+			ThreadLocal<SearchStack> stacks=ThreadLocal.withInitial(SearchStack::new);
+			SearchTask root=new SearchTask(null,new int[0],new int[0],new int[0],new boolean[0],rootCandidates[0],0,rootCandidates[0].length,counter,stacks);
+			searchStart=inizio;
+			runningSearches.add(this);
+			try
+			{
+				if(ForkJoinTask.getPool() == pool)
+					root.invoke();
+				else
+					pool.invoke(root);
+			}
+			finally
+			{
+				runningSearches.remove(this);
+			}
+			searchTime=(System.nanoTime()-inizio)/1e9;
+			commitSearchEvent(event,pool.getParallelism(),0,counter.sum());
+			return counter.sum();
+		}
+
+		/*
+		Final check of a full mapping: the temporal structure of the mapped target contacts must be compatible with the query,
+		i.e. the delta conditions of each in contact of a query node must be dominated by the delta conditions
+		of one of the mapped in contacts of its target node (see TemporalGraph.testMap)
+		@param contactTimes: time of the target contact mapped to each query contact
+		@param conditions: scratch buffer for the delta conditions of the target contacts
+		*/
+		private boolean verifyMapping(int[] contactTimes, int[] conditions)
+		{
+			for(int si=0; si<mama.nof_sn; si++)
+				if(!verifyState(si,contactTimes,conditions))
+					return false;
+			return true;
+		}
+
+		/*
+		Check of verifyMapping for the query node of a state, which only needs the times of the contacts of the node
+		*/
+		private boolean verifyState(int si, int[] contactTimes, int[] conditions)
+		{
+			int[] inContacts=stateInContacts[si];
+			int[] queryConditions=stateInConditions[si];
+			for(int k=0; k<inContacts.length; k++)
+				deltaConditions(contactTimes[inContacts[k]],stateOutContacts[si],contactTimes,delta,conditions,3*k);
+			for(int j=0; j<3*inContacts.length; j+=3)
+			{
+				boolean dominated=false;
+				for(int k=0; k<3*inContacts.length && !dominated; k+=3)
+					dominated=queryConditions[j]<=conditions[k] && queryConditions[j+1]<=conditions[k+1] && queryConditions[j+2]<=conditions[k+2];
+				if(!dominated)
+					return false;
+			}
+			return true;
+		}
+
+		/*
+		Check the time order and delta of the contacts of partial mappings: once state si is mapped, the query nodes
+		whose contacts are all mapped are verified as in verifyMapping, so a partial mapping is rejected as soon as
+		the times of the contacts of one of its nodes are incompatible with the query, instead of after all its extensions
+		to full mappings.
+		Every binding is fixed when every edge has a single contact. Otherwise the contacts of a node whose binding is not
+		fixed are bound to each contact of their target edge with a compatible signature, and the node is rejected
+		if no such binding passes. Any binding of a full mapping is among them, so no match is lost.
+		Nodes with more than ORDER_CHECK_BINDINGS bindings are left to the final check
+		@param stack: search stack, with the edges, contact times and fixed contacts set by edgesCheck up to state si
+		*/
+		private boolean orderCheck(int si, SearchStack stack)
+		{
+			for(int s : stateCompletedStates[si])
+				if(!orderCheckState(s,stack))
+					return false;
+			return true;
+		}
+
+		/*
+		Order check of the query node of state s, whose contacts are all mapped
+		@return false if no binding of its contacts passes verifyState
+		*/
+		private boolean orderCheckState(int s, SearchStack stack)
+		{
+			boolean[] fixedContacts=stack.fixedContacts;
+			int[] open=stack.openContacts;
+			int[] binding=stack.binding;
+			int[] bindingEnd=stack.bindingEnd;
+			int numOpen=0;
+			long bindings=1;
+			for(int k=0; k<stateInContacts[s].length+stateOutContacts[s].length; k++)
+			{
+				int q=k < stateInContacts[s].length ? stateInContacts[s][k] : stateOutContacts[s][k-stateInContacts[s].length];
+				if(fixedContacts[q])
+					continue;
+				int pos=stack.edgePositions[queryContactEdges[q]];
+				binding[numOpen]=contactBegin(pos);
+				bindingEnd[numOpen]=contactEnd(pos);
+				bindings*=bindingEnd[numOpen]-binding[numOpen];
+				if(bindings > ORDER_CHECK_BINDINGS)
+					return true;
+				open[numOpen++]=q;
+			}
+			if(numOpen == 0)
+				return verifyState(s,stack.contactTimes,stack.conditions);
+			//Try every binding of the open contacts, as an odometer whose digit k runs over the contacts of the edge of open[k]
+			int[] targetOutTimes=targetGraph.getOutTimes();
+			int k=0;
+			binding[0]--;
+			while(k >= 0)
+			{
+				int q=open[k];
+				int c=binding[k]+1;
+				while(c < bindingEnd[k] && !TemporalGraph.controlTemporals(querySignatures,6*q,targetSignatures,6*c))
+					c++;
+				if(c >= bindingEnd[k])
+				{
+					binding[k]=contactBegin(stack.edgePositions[queryContactEdges[q]]);
+					k--;
+					continue;
+				}
+				binding[k]=c;
+				stack.contactTimes[q]=targetOutTimes[c];
+				if(k == numOpen-1)
+				{
+					if(verifyState(s,stack.contactTimes,stack.conditions))
+						return true;
+				}
+				else
+				{
+					k++;
+					binding[k]--;
+				}
+			}
+			return false;
+		}
+
+		/*
+		Count the bindings of the query contacts to target contacts of a full mapping which pass verifyMapping.
+		The contacts of a query edge are bound, in time order, to distinct contacts of the target edge
+		mapped to it with a compatible temporal signature, so each binding is a distinct set of target contacts
+		@param stack: search stack holding the target edge mapped to each query edge
+		*/
+		private long countBindings(SearchStack stack)
+		{
+			if(singleContacts)
+			{
+				//The contacts of every node have already been verified by orderCheck
+				if(!owned(stack.contactTimes))
+					return 0;
+				return report(stack) ? 1 : 0;
+			}
+			int[] targetOutTimes=targetGraph.getOutTimes();
+			int[] contactTimes=stack.contactTimes;
+			int[] binding=stack.binding;
+			int numContacts=queryTimes.length;
+			long count=0;
+			int e=0;
+			int q=0;
+			binding[0]=contactBegin(stack.edgePositions[0])-1;
+			while(q >= 0)
+			{
+				//Query contact q is the first of edge e: next contacts of the same edge start after binding[q]
+				int end=contactEnd(stack.edgePositions[e]);
+				//Leave room for the following contacts of the same edge
+				end-=edgeContactOffset[e+1]-q-1;
+				binding[q]++;
+				while(binding[q] < end && !TemporalGraph.controlTemporals(querySignatures,6*q,targetSignatures,6*binding[q]))
+					binding[q]++;
+				if(binding[q] >= end)
+				{
+					//Backtrack to the previous query contact
+					q--;
+					if(q >= 0 && q < edgeContactOffset[e])
+						e--;
+					continue;
+				}
+				contactTimes[q]=targetOutTimes[binding[q]];
+				if(q == numContacts-1)
+				{
+					if(verifyMapping(contactTimes,stack.conditions) && owned(contactTimes))
+					{
+						if(report(stack))
+							count++;
+						if(stopped)
+							return count;
+					}
+					continue;
+				}
+				q++;
+				if(q == edgeContactOffset[e+1])
+				{
+					e++;
+					binding[q]=contactBegin(stack.edgePositions[e])-1;
+				}
+				else
+					binding[q]=binding[q-1];
+			}
+			return count;
+		}
+
+		/*
+		Pass the match of the stack to the sink, if any.
+		Calls to the sink are serialized, so that no worker passes a match after the sink asked to stop
+		@return true if the match was passed to the sink, or there is no sink, so that it is counted
+		*/
+		private boolean report(SearchStack stack)
+		{
+			if(sink == null)
+				return true;
+			for(int si=0; si<mama.nof_sn; si++)
+				stack.nodes[mama.map_state_to_node[si]]=stack.solution[si];
+			synchronized(this)
+			{
+				if(stopped)
+					return false;
+				if(!sink.onMatch(stack.nodes,stack.contactTimes))
+					stopped=true;
+				return true;
+			}
+		}
+
+		/*
+		Explore the state space below state rootState,
+		starting from the candidates of rootState stored in the stack
+		@param stack: search stack of the current worker
+		@param rootState: state where the search starts, states before it are already mapped
+		@param task: task running the search, if the search can be split, null otherwise
+		*/
+		private void search(SearchStack stack, int rootState, SearchTask task)
+		{
+			int nof_sn=mama.nof_sn;
+			MamaParentType[] parent_type=mama.parent_type;
+			int[] candidatesIT=stack.candidatesIT;
+			int[] candidatesEnd=stack.candidatesEnd;
+			int[][] candidates=stack.candidates;
+			int[] solution=stack.solution;
+			boolean[] matched=stack.matched;
+			SearchStatistics statistics=stack.statistics;
+			//State charged with the time since clock
+			int timedState=rootState;
+			long clock=statistics == null ? 0 : System.nanoTime();
+
+			boolean stoppable=sink != null;
+			int psi = rootState-1;
+			int si = rootState;
+			int ci;
+			int sip1;
+			while(si >= rootState)
+			{
+				if(statistics != null)
+				{
+					long now=System.nanoTime();
+					statistics.nanos[timedState]+=now-clock;
+					clock=now;
+					timedState=si;
+				}
+				stack.depth=si;
+				if(stoppable && stopped)
+				{
+					//Release the target nodes mapped below rootState, the stack is reused by other tasks
+					for(int sj=rootState; sj<si; sj++)
+						matched[solution[sj]] = false;
+					break;
+				}
+				if(psi >= si)
+					//Backtracking: remove mapping for currently processed query node
+					matched[solution[si]] = false;
+				ci = -1;
+				//Process match between currently processed query node and next candidate node
+				candidatesIT[si]++;
+				//Give part of the remaining candidates to idle workers
+				if(task != null && si < nof_sn-1)
+					task.trySplit(stack,si);
+				while(candidatesIT[si]<candidatesEnd[si])
+				{
+					ci = candidates[si][candidatesIT[si]];
+					//Add mapping
+					solution[si] = ci;
+					if(statistics != null)
+						statistics.candidates[si]++;
+					//Check if target node-query node mapping is feasible
+					if(!matched[ci]
+							&& domains[mama.map_state_to_node[si]].get(ci)
+							&& condCheck(si,solution,stateConditions)
+							//TODO control on the subgraph and not on the full structure
+							&& edgesCheck(si,solution,stack.edgePositions,stack.contactTimes,stack.fixedContacts)
+							&& orderCheck(si,stack)
+							)
+						break;
+					else
+					{
+						if(statistics != null)
+							countRejection(statistics,si,ci,stack);
+						ci=-1;
 					}
+					//Mapping is not feasible, go on with next candidate
+					candidatesIT[si]++;
+				}
+				//No candidate target nodes can be mapped to the currently processed query node
+				//Do backtracking and go back to the previously processed query node
+				if(ci == -1)
+				{
+					if(statistics != null)
+						statistics.backtracks[si]++;
 					psi = si;
+					si--;
 				}
 				else
 				{
-					//There are still unmapped query nodes. Continue the search
-					matched[solution[si]] = true;
-					//Go to the next query node to process for matching
-					sip1 = si+1;
-					if(parent_type[sip1] != MamaParentType.PARENTTYPE_NULL)
+					//Mapping is feasible
+					if(si == nof_sn -1)
 					{
-						//Build the set of target candidate nodes for matching with the new query node
-						if(parent_type[sip1] == MamaParentType.PARENTTYPE_IN)
-							candidates[sip1] = targetInAdjLists[solution[parent_state[sip1]]].toArray();
+						//control if the temporal structure of the mapped contacts is the same
+						stack.verified++;
+						long found=countBindings(stack);
+						if(found > 0) {
+							stack.totalMatches+=found;
+							//All query nodes have been mapped. Update the number of occurrences found
+							long previous=stack.numMatches;
+							stack.numMatches+=found;
+							//printsolution(solution);
+							if(task == null && previous/10000000 != stack.numMatches/10000000)
+								System.out.println("Found "+stack.numMatches+" occurrences...");
+						}
+						else if(statistics != null && !stopped)
+							statistics.rejectedFinal[si]++;
+						psi = si;
+					}
+					else
+					{
+						//There are still unmapped query nodes. Continue the search
+						matched[solution[si]] = true;
+						//Every candidate of the first state passes the checks, so this counts the explored ones
+						if(si == 0)
+							stack.rootExplored++;
+						//Go to the next query node to process for matching
+						sip1 = si+1;
+						if(parent_type[sip1] != MamaParentType.PARENTTYPE_NULL)
+							//Build the set of target candidate nodes for matching with the new query node
+							intersectCandidates(stack,sip1);
 						else
-							candidates[sip1] = targetOutAdjLists[solution[parent_state[sip1]]].toArray();
+						{
+							//Start from the first target candidate node for that query node
+							candidatesIT[sip1]=-1;
+							candidatesEnd[sip1]=candidates[sip1].length;
+						}
+						psi = si;
+						si++;
 					}
-					//Start from the first target candidate node for that query node
-					candidatesIT[si+1]=-1;
-					psi = si;
-					si++;
 				}
 			}
+			if(statistics != null)
+				statistics.nanos[timedState]+=System.nanoTime()-clock;
+			stack.depth=-1;
 		}
-	}
 
-	/*
-	Compute the compatibility domains for each query node
-	Each domain is represented as a BitSet with numTargetNodes bits.
-	Bit 1 in position i means that target node i is in the compatibility domain of that query node
-	 */
-	private BitSet[] computeDomains(TemporalGraph queryGraph,int delta)
-	{
-		int numQueryNodes=queryGraph.getNumNodes();
-		int numTargetNodes=targetGraph.getNumNodes();
-		BitSet[] domains=new BitSet[numQueryNodes];
-		int i, j;
-		for(i=0;i<domains.length;i++)
-			domains[i]=new BitSet(numTargetNodes);
+		/*
+		Build the candidates of state si: target nodes in the domain of si adjacent, with the right direction,
+		to the target nodes mapped to all the query neighbors of si in the previous states.
+		Neighbor ranges of the CSR snapshot are sorted by node id, so the shortest one is filtered by the domain
+		and then intersected with the others. With a single query neighbor the candidates are its neighbor range,
+		read in place, and the domain is checked candidate by candidate, so descending into a state allocates nothing.
+		Candidates, iterator and end of si are set in the stack
+		*/
+		private void intersectCandidates(SearchStack stack, int si)
+		{
+			int[] solution=stack.solution;
+			int firstEdge=mama.edge_offsets[si];
+			int[] rangeBegins=stack.rangeBegins;
+			int[] rangeEnds=stack.rangeEnds;
+			int[][] rangeNeighbors=stack.rangeNeighbors;
+			int shortest=0;
+			for(int me=0; me<mama.edges_sizes[si]; me++)
+			{
+				int source=mama.edge_sources[firstEdge+me];
+				int target=mama.edge_targets[firstEdge+me];
+				//Query edges of si go to or come from a previous state
+				boolean out=target == si;
+				int node=solution[out ? source : target];
+				int[] offsets=out ? targetGraph.getOutOffsets() : targetGraph.getInOffsets();
+				rangeNeighbors[me]=out ? targetGraph.getOutNeighbors() : targetGraph.getInNeighbors();
+				rangeBegins[me]=offsets[node];
+				rangeEnds[me]=offsets[node+1];
+				if(rangeEnds[me]-rangeBegins[me] < rangeEnds[shortest]-rangeBegins[shortest])
+					shortest=me;
+			}
+			if(mama.edges_sizes[si] == 1)
+			{
+				stack.init(si,rangeNeighbors[0],rangeBegins[0],rangeEnds[0]);
+				return;
+			}
+			int[] buffer=stack.candidateBuffers[si];
+			if(buffer.length < rangeEnds[shortest]-rangeBegins[shortest])
+			{
+				buffer=new int[Math.max(rangeEnds[shortest]-rangeBegins[shortest],2*buffer.length)];
+				stack.candidateBuffers[si]=buffer;
+			}
+			BitSet domain=domains[mama.map_state_to_node[si]];
+			int[] neighbors=rangeNeighbors[shortest];
+			int size=0;
+			for(int k=rangeBegins[shortest]; k<rangeEnds[shortest]; k++)
+				if(domain.get(neighbors[k]))
+					buffer[size++]=neighbors[k];
+			for(int me=0; me<mama.edges_sizes[si] && size > 0; me++)
+				if(me != shortest)
+					size=intersect(buffer,size,rangeNeighbors[me],rangeBegins[me],rangeEnds[me]);
+			stack.init(si,buffer,0,size);
+		}
 
-		TIntHashSet[] targetOutAdjLists=targetGraph.getOutAdjList();
-		TIntHashSet[] targetInAdjLists=targetGraph.getInAdjList();
-		TIntHashSet[] queryOutAdjLists=queryGraph.getOutAdjList();
-		TIntHashSet[] queryInAdjLists=queryGraph.getInAdjList();
-		for(i=0;i<numTargetNodes;i++)
+		/*
+		Count the check rejecting a candidate. Checks are made in order, so the first failing one is found
+		testing them again, and the order check rejected the candidate if all the others pass
+		*/
+		private void countRejection(SearchStatistics statistics, int si, int ci, SearchStack stack)
 		{
-			//Find compatible query nodes and update domains
-			for(j=0;j<domains.length;j++)
+			if(stack.matched[ci])
+				statistics.rejectedMatched[si]++;
+			else if(!domains[mama.map_state_to_node[si]].get(ci))
+				statistics.rejectedDomain[si]++;
+			else if(!condCheck(si,stack.solution,stateConditions))
+				statistics.rejectedCondition[si]++;
+			else if(!edgesCheck(si,stack.solution,stack.edgePositions,stack.contactTimes,stack.fixedContacts))
+				statistics.rejectedEdges[si]++;
+			else
+				statistics.rejectedOrder[si]++;
+		}
+
+		/*
+		Per-worker state of the search:
+		candidate sets, iterators, partial mapping and set of already mapped target nodes
+		*/
+		private final class SearchStack
+		{
+			//Iterators for the set of target candidate nodes for matching
+			//in order to know from which candidate the search should proceed when doing backtracking
+			//One iterator for each query node
+			final int[] candidatesIT;
+			//Position after the last candidate to process, one for each query node
+			final int[] candidatesEnd;
+			//Set of target candidate nodes for matching, one for each query node
+			final int[][] candidates;
+			//Partial mapping between query and target nodes
+			final int[] solution;
+			//Set of already mapped target nodes
+			final boolean[] matched;
+			//Position of the target edge mapped to each query edge
+			final int[] edgePositions;
+			//Time of the target contact bound to each query contact
+			final int[] contactTimes;
+			//Query contacts whose binding is fixed by the mapped target edge, see edgesCheck
+			final boolean[] fixedContacts;
+			//Contacts whose binding is not fixed and end of the contacts they can be bound to, used by orderCheck
+			final int[] openContacts;
+			final int[] bindingEnd;
+			//Position of the target contact bound to each query contact, used by countBindings and orderCheck
+			final int[] binding;
+			//Target node mapped to each query node, passed to the sink
+			final int[] nodes;
+			//Scratch buffer for the delta conditions computed by verifyMapping
+			final int[] conditions;
+			//Candidates of the states with more query neighbors built by intersectCandidates, grown when needed
+			final int[][] candidateBuffers;
+			//Neighbor ranges intersected by intersectCandidates, one for each query edge of a state
+			final int[][] rangeNeighbors;
+			final int[] rangeBegins;
+			final int[] rangeEnds;
+			//Number of matches found by this stack not yet reported
+			long numMatches;
+			//Search statistics of this stack, null if they are not collected
+			final SearchStatistics statistics;
+			//Counters read by the progress event without synchronization: state being processed, -1 when the stack is idle,
+			//candidates of the first state explored, matches found and full mappings verified
+			int depth=-1;
+			long rootExplored;
+			long totalMatches;
+			long verified;
+
+			SearchStack()
 			{
-				if(queryOutAdjLists[j].size()<=targetOutAdjLists[i].size()
-						&& queryInAdjLists[j].size()<=targetInAdjLists[i].size()
-						&& queryGraph.testCompatibility(targetGraph,j,i,delta)
-						)
+				int nof_sn=mama.nof_sn;
+				candidatesIT=new int[nof_sn];
+				candidatesEnd=new int[nof_sn];
+				candidates=new int[nof_sn][];
+				solution=new int[nof_sn];
+				matched=new boolean[targetGraph.getNumNodes()];
+				edgePositions=new int[stateEdgeOffset[nof_sn]];
+				contactTimes=new int[queryTimes.length];
+				fixedContacts=new boolean[queryTimes.length];
+				openContacts=new int[queryTimes.length];
+				bindingEnd=new int[queryTimes.length];
+				//A single contact is always bound to the single contact of its target edge
+				if(singleContacts)
+					Arrays.fill(fixedContacts,true);
+				binding=new int[queryTimes.length];
+				nodes=new int[nof_sn];
+				int maxInContacts=0;
+				for(int si=0; si<nof_sn; si++)
+					maxInContacts=Math.max(maxInContacts,stateInContacts[si].length);
+				conditions=new int[3*maxInContacts];
+				candidateBuffers=new int[nof_sn][];
+				int maxEdges=0;
+				for(int si=0; si<nof_sn; si++)
+				{
+					candidateBuffers[si]=new int[0];
+					maxEdges=Math.max(maxEdges,mama.edges_sizes[si]);
+				}
+				rangeNeighbors=new int[maxEdges][];
+				rangeBegins=new int[maxEdges];
+				rangeEnds=new int[maxEdges];
+				statistics=collectStatistics ? new SearchStatistics(mama.map_state_to_node) : null;
+				searchStacks.add(this);
+				for(int i=0; i<nof_sn; i++)
 				{
-					domains[j].set(i);
-					//System.out.println(j+"-"+i);
+					solution[i] = -1;
+					candidates[i] = rootCandidates[i];
 				}
 			}
+
+			/*
+			Start the search from state si, processing candidates cands[from..to-1]
+			*/
+			void init(int si, int[] cands, int from, int to)
+			{
+				candidates[si]=cands;
+				candidatesIT[si]=from-1;
+				candidatesEnd[si]=to;
+			}
 		}
 
-		//Arc consistency check
-		int ra, qb, rb;
-		boolean notfound;
-		for(int qa=0; qa<numQueryNodes; qa++)
+		/*
+		Search task processing a range of candidates of a state, given the mapping of the previous states.
+		Tasks are never joined: each forked task reports its completion to the task which forked it,
+		so a worker never runs another task on a stack which is still in use.
+		*/
+		private final class SearchTask extends CountedCompleter<Void>
 		{
-			for(ra = domains[qa].nextSetBit(0); ra >= 0; ra = domains[qa].nextSetBit(ra+1))
+			private static final long serialVersionUID = 1L;
+			//Mapping of the states before the first state processed by this task,
+			//with the target edges mapped to their query edges and the times of the contacts bound to their query contacts,
+			//if fixed
+			private final int[] prefix;
+			private final int[] prefixEdges;
+			private final int[] prefixContactTimes;
+			private final boolean[] prefixFixedContacts;
+			private final int[] cands;
+			private final int from, to;
+			private final LongAdder counter;
+			private final ThreadLocal<SearchStack> stacks;
+
+			SearchTask(SearchTask parent, int[] prefix, int[] prefixEdges, int[] prefixContactTimes, boolean[] prefixFixedContacts,
+					int[] cands, int from, int to, LongAdder counter, ThreadLocal<SearchStack> stacks)
 			{
-				//for each edge qa->qb  check if exists ra->rb
-				TIntIterator it=queryOutAdjLists[qa].iterator();
-				while(it.hasNext())
+				super(parent);
+				this.prefix=prefix;
+				this.prefixEdges=prefixEdges;
+				this.prefixContactTimes=prefixContactTimes;
+				this.prefixFixedContacts=prefixFixedContacts;
+				this.cands=cands;
+				this.from=from;
+				this.to=to;
+				this.counter=counter;
+				this.stacks=stacks;
+			}
+
+			@Override
+			public void compute()
+			{
+				if(stopped)
+				{
+					tryComplete();
+					return;
+				}
+				SearchStack stack=stacks.get();
+				int rootState=prefix.length;
+				for(int i=0; i<rootState; i++)
+				{
+					stack.solution[i]=prefix[i];
+					stack.matched[prefix[i]]=true;
+				}
+				//The order check and the final check read the edges and contacts of all the states,
+				//the stack may hold those of another task
+				System.arraycopy(prefixEdges,0,stack.edgePositions,0,prefixEdges.length);
+				System.arraycopy(prefixContactTimes,0,stack.contactTimes,0,prefixContactTimes.length);
+				System.arraycopy(prefixFixedContacts,0,stack.fixedContacts,0,prefixFixedContacts.length);
+				stack.init(rootState,cands,from,to);
+				search(stack,rootState,this);
+				for(int i=0; i<rootState; i++)
+					stack.matched[prefix[i]]=false;
+				counter.add(stack.numMatches);
+				stack.numMatches=0;
+				tryComplete();
+			}
+
+			/*
+			Fork a new task on the second half of the candidates still to process for state si
+			if the current worker has no queued tasks that idle workers can steal
+			*/
+			void trySplit(SearchStack stack, int si)
+			{
+				int remaining=stack.candidatesEnd[si]-stack.candidatesIT[si];
+				if(remaining < 2 || stopped || getSurplusQueuedTaskCount() >= SPLIT_SURPLUS)
+					return;
+				int mid=stack.candidatesIT[si]+(remaining+1)/2;
+				int[] childCandidates=stack.candidates[si];
+				int from=mid, to=stack.candidatesEnd[si];
+				if(childCandidates == stack.candidateBuffers[si])
+				{
+					//The candidate buffer of the stack is rebuilt when the search comes back to si, the task needs its own copy
+					childCandidates=Arrays.copyOfRange(childCandidates,from,to);
+					from=0;
+					to=childCandidates.length;
+				}
+				int edges=stateEdgeOffset[si];
+				SearchTask child=new SearchTask(this,Arrays.copyOf(stack.solution,si),Arrays.copyOf(stack.edgePositions,edges),
+						Arrays.copyOf(stack.contactTimes,edgeContactOffset[edges]),Arrays.copyOf(stack.fixedContacts,edgeContactOffset[edges]),
+						childCandidates,from,to,counter,stacks);
+				stack.candidatesEnd[si]=mid;
+				addToPendingCount(1);
+				child.fork();
+			}
+		}
+
+		/*
+		Check if the symmetry breaking conditions whose later state is the currently matched one are satisfied
+		@param si: id of currently matched query node
+		@param solution: set of already matched couples of query-target nodes
+		@param stateConditions: conditions of each state, see stateConditions
+		*/
+		boolean condCheck(int si, int[] solution, int[][] stateConditions)
+		{
+			int[] conditions=stateConditions[si];
+			for(int k=0; k<conditions.length; k+=2)
+				if(solution[conditions[k]]<solution[conditions[k+1]])
+					return false;
+			return true;
+		}
+
+		/*
+		Assign each symmetry breaking condition to the later of the states of its two query nodes, so that it is checked
+		as soon as both nodes are mapped, whatever the order of the states.
+		The condition of node k on node i in symmCond[k] is stored as the pair of states of k and i:
+		the target node mapped to k must not be lower than the one mapped to i
+		@return pairs of states of the conditions checked at each state
+		*/
+		int[][] stateConditions(Vector<Integer>[] symmCond)
+		{
+			int nof_sn=mama.nof_sn;
+			int[] counts=new int[nof_sn];
+			for(int k=0; k<symmCond.length; k++)
+				for(int i : symmCond[k])
+					counts[Math.max(mama.map_node_to_state[k],mama.map_node_to_state[i])]++;
+			int[][] conditions=new int[nof_sn][];
+			for(int si=0; si<nof_sn; si++)
+				conditions[si]=new int[2*counts[si]];
+			Arrays.fill(counts,0);
+			for(int k=0; k<symmCond.length; k++)
+			{
+				for(int i : symmCond[k])
+				{
+					int sk=mama.map_node_to_state[k];
+					int sj=mama.map_node_to_state[i];
+					int si=Math.max(sk,sj);
+					conditions[si][counts[si]++]=sk;
+					conditions[si][counts[si]++]=sj;
+				}
+			}
+			return conditions;
+		}
+	
+
+		/*
+		Check if edges between the currently matched node and the previously matched ones, also matches in the target
+		@param si: id of the query node
+		@param solution: set of already matched couples of query-target nodes
+		@param edgePositions: array where the position of the target edge mapped to each query edge of si is stored
+		@param contactTimes: array where the time of the target contact bound to each query contact is stored,
+		when the binding is fixed by the mapped target edge
+		@param fixedContacts: array where it is stored whether the binding of each query contact is fixed, i.e. the mapped
+		target edge has as many contacts as the query edge, so they can only be bound in time order
+		*/
+		private boolean edgesCheck(int si, int[] solution, int[] edgePositions, int[] contactTimes, boolean[] fixedContacts)
+		{
+			int[] targetOutTimes=targetGraph.getOutTimes();
+			int[] edgeSources=mama.edge_sources;
+			int[] edgeTargets=mama.edge_targets;
+			for(int e=stateEdgeOffset[si]; e<stateEdgeOffset[si+1]; e++)
+			{
+				int pos = targetGraph.findOut(solution[edgeSources[e]],solution[edgeTargets[e]]);
+				if(pos < 0)
+					return false;
+				edgePositions[e] = pos;
+				//Compare precomputed temporal signatures of the query contacts and of the target contacts
+				if(singleContacts)
 				{
-					qb = it.next();
-					notfound = true;
-					TIntIterator it2=targetOutAdjLists[ra].iterator();
-					while(it2.hasNext())
+					if(!TemporalGraph.controlTemporals(querySignatures,6*edgeContactOffset[e],targetSignatures,6*pos)) return false;
+					if(windowed && (targetOutTimes[pos] < tStart || targetOutTimes[pos] > tEnd)) return false;
+					contactTimes[edgeContactOffset[e]] = targetOutTimes[pos];
+					continue;
+				}
+				int begin = contactBegin(pos);
+				int end = contactEnd(pos);
+				//The target edge needs a distinct contact for each contact of the query edge
+				if(end-begin < edgeContactOffset[e+1]-edgeContactOffset[e])
+					return false;
+				if(end-begin == edgeContactOffset[e+1]-edgeContactOffset[e])
+				{
+					for(int q=edgeContactOffset[e], c=begin; q<edgeContactOffset[e+1]; q++, c++)
 					{
-						rb = it2.next();
-						if(domains[qb].get(rb))
-						{
-							notfound = false;
-							break;
-						}
+						if(!TemporalGraph.controlTemporals(querySignatures,6*q,targetSignatures,6*c))
+							return false;
+						contactTimes[q] = targetOutTimes[c];
+						fixedContacts[q] = true;
 					}
-					if(notfound)
-						domains[qa].set(ra, false);
+					continue;
+				}
+				for(int q=edgeContactOffset[e]; q<edgeContactOffset[e+1]; q++)
+				{
+					int c = begin;
+					while(c < end && !TemporalGraph.controlTemporals(querySignatures,6*q,targetSignatures,6*c))
+						c++;
+					if(c == end)
+						return false;
+					fixedContacts[q] = false;
 				}
 			}
+			return true;
 		}
-
-		return domains;
 	}
 
 	/*
-	Check if symmetry breaking conditions for the currently matched query node are satisfied
+	Check if symmetry breaking conditions for the currently matched query node of the last solve are satisfied
 	@param si: id of currently matched query node
 	@param solution: set of already matched couples of query-target nodes
-	@param matched: array of boolean where the i-th entry is true iff the target node i has been already matched
 	*/
 	public boolean condCheck(int si, int[] solution, Vector<Integer>[] symmCond)
 	{
-		boolean condCheck=true;
-		Vector<Integer> condNode=symmCond[mama.map_state_to_node[si]];
-		int ii;
-		for(ii=0;ii<condNode.size();ii++)
-		{
-			int targetNode=solution[mama.map_node_to_state[condNode.get(ii)]];
-			if(solution[si]<targetNode)
-			{
-				condCheck=false;
-				break;
-			}
-		}
-		return condCheck;
+		return query.condCheck(si,solution,symmCond == query.symmCond ? query.stateConditions : query.stateConditions(symmCond));
 	}
-	
+
 	/*
-	Check if outgoing edges from currently matched nodes in the query and in the target, also matches
-	@param si: id of the query node
-	@param ci: id of the target node
-	@param solution: set of already matched couples of query-target nodes
-	@param matched: array of boolean where the i-th entry is true iff the target node i has been already matched
+	Check if edges between the currently matched node and the previously matched ones of the last solve, also matches in the target.
+	The scratch arrays are allocated once for each solve and reused, so that repeated calls only measure the check
+	@param si: id of currently matched state
+	@param solution: set of already matched couples of query-target nodes, indexed by state
 	*/
-	public boolean edgesCheck(int si, int ci, int[] solution, boolean[] matched, TemporalGraph query, int delta)
+	public boolean edgesCheck(int si, int[] solution)
 	{
-		TIntHashSet[] targetOutAdjLists=targetGraph.getOutAdjList();
-		for(int me=0; me<mama.edges_sizes[si]; me++)
+		if(query.checkEdgePositions == null)
 		{
-			int querySource = mama.edges[si][me].source;
-			int queryDest = mama.edges[si][me].target;
-			int querytime = mama.edges[si][me].time;
-			int source = solution[querySource];
-			int target = solution[queryDest];
-			int trueSource = mama.map_state_to_node[querySource];
-			int trueDest = mama.map_state_to_node[queryDest];
-			if(!targetOutAdjLists[source].contains(target))
-				return false;
-			int time = targetGraph.getOutAdjListTimes()[source].get(target).time;
-			if(!query.controlTemporals(query.nodeTemporalStructure(trueDest,querytime,delta),targetGraph.nodeTemporalStructure(target,time,delta))) return false;
+			query.checkEdgePositions=new int[query.stateEdgeOffset[query.mama.nof_sn]];
+			query.checkContactTimes=new int[query.queryTimes.length];
+			query.checkFixedContacts=new boolean[query.queryTimes.length];
 		}
-		return true;
+		return query.edgesCheck(si,solution,query.checkEdgePositions,query.checkContactTimes,query.checkFixedContacts);
 	}
 
 	public long getNumMatches()
 	{
 		return numMatches;
 	}
+
+	/*
+	Source query node, target query node and time of each query contact of the last solve,
+	in the order of the contact times passed to MatchSink.onMatch
+	*/
+	public int[] getQueryContactSources()
+	{
+		return query == null ? null : query.queryContactSources;
+	}
+
+	public int[] getQueryContactTargets()
+	{
+		return query == null ? null : query.queryContactTargets;
+	}
+
+	public int[] getQueryContactTimes()
+	{
+		return query == null ? null : query.queryTimes;
+	}
+
+	/*
+	Print, for the last solve, how much arc consistency shrank the domain of each query node
+	and the time it took compared with search
+	*/
+	public void printDomainStatistics()
+	{
+		for(int i=0; i<query.domains.length; i++)
+		{
+			int before=query.initialDomainSizes[i];
+			int after=query.domains[i].cardinality();
+			System.out.println("Query node "+i+": domain "+before+" -> "+after+" ("+(before-after)+" removed by arc consistency)");
+		}
+		System.out.println("Domains: "+query.domainTime+" secs on "+query.domainThreads+" threads");
+		System.out.println("Arc consistency: "+query.refinementRevisions+" revisions in "+query.refinementTime+" secs, search: "+query.searchTime+" secs");
+	}
+
+	/*
+	Domain sizes of the query nodes of the last solve, before and after arc consistency
+	*/
+	public int[] getInitialDomainSizes()
+	{
+		return query.initialDomainSizes;
+	}
+
+	public int[] getDomainSizes()
+	{
+		int[] sizes=new int[query.domains.length];
+		for(int i=0; i<sizes.length; i++)
+			sizes[i]=query.domains[i].cardinality();
+		return sizes;
+	}
+
+	/*
+	Time spent by the last solve on domains, arc consistency and search, in seconds
+	*/
+	public double getDomainTime()
+	{
+		return query.domainTime;
+	}
+
+	public double getRefinementTime()
+	{
+		return query.refinementTime;
+	}
+
+	public double getSearchTime()
+	{
+		return query.searchTime;
+	}
+
+	/*
+	Search statistics of the last solve, summed over all the search stacks, null if they were not collected
+	*/
+	public SearchStatistics getSearchStatistics()
+	{
+		if(query == null || !query.collectStatistics)
+			return null;
+		Vector<SearchStatistics> statistics=new Vector<>();
+		for(Query.SearchStack stack : query.searchStacks)
+			statistics.add(stack.statistics);
+		SearchStatistics total=SearchStatistics.sum(query.mama.map_state_to_node,statistics);
+		total.setEstimatedNodes(query.mama.estimated_nodes);
+		return total;
+	}
+
+	/*
+	Estimated number of partial mappings of the states up to each state in the last solve, null if the order was not cost-based
+	*/
+	public double[] getEstimatedNodes()
+	{
+		return query == null ? null : query.mama.estimated_nodes;
+	}
 }
\ No newline at end of file
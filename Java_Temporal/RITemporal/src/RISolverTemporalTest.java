@@ -29,5 +29,225 @@ class RISolverTemporalTest {
 		assertEquals(ri1.getNumMatches(), 2);
 	}
 	
+	@Test
+	void testSolveParallel() {
+		initialize();
+		ri1.solveParallel(provaQuery, 5, 4);
+		assertEquals(ri1.getNumMatches(), 2);
+	}
+	
+	@Test
+	void testSolveRepeatedContacts() {
+		TemporalGraph target = new TemporalGraph(true, 3);
+		target.addEdge(0,1,1).addEdge(0,1,2).addEdge(0,1,3).addEdge(1,2,4);
+		TemporalGraph query = new TemporalGraph(true, 2);
+		query.addEdge(0,1,1).addEdge(0,1,2);
+		RISolverTemporal ri = new RISolverTemporal(target, false);
+		ri.solve(query, 100);
+		//two of the three contacts 0->1 of the target
+		assertEquals(ri.getNumMatches(), 3);
+	}
+	
+	@Test
+	void testContactTimes() {
+		Contact contact = new Contact(1, 5);
+		//appended in time order, then inserted before the others
+		for(int t = 6; t < 20; t++)
+			contact.addTime(t);
+		contact.addTime(3);
+		contact.addTime(10);
+		assertTrue(contact.removeTime(12));
+		assertFalse(contact.removeTime(2));
+		assertEquals(contact.numContacts(), 16);
+		assertEquals(contact.time, 3);
+		for(int k = 1; k < contact.numContacts(); k++)
+			assertTrue(contact.getTime(k-1) <= contact.getTime(k));
+		contact.trim();
+		assertEquals(contact.times.length, 16);
+	}
+	
+	@Test
+	void testSolveFirstMatch() {
+		initialize();
+		MatchSink.FirstMatch first = new MatchSink.FirstMatch();
+		ri1.solve(provaQuery, 5, first);
+		assertEquals(ri1.getNumMatches(), 1);
+		assertEquals(first.getNodes().size(), 1);
+	}
+	
+	@Test
+	void testSolveFirstKParallel() {
+		TemporalGraph target = new TemporalGraph(true, 200);
+		for(int i = 0; i < 199; i++)
+			target.addEdge(i,i+1,i).addEdge(i+1,i,i);
+		TemporalGraph query = new TemporalGraph(true, 3);
+		query.addEdge(0,1,1).addEdge(1,2,2);
+		RISolverTemporal ri = new RISolverTemporal(target, false);
+		java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+		MatchSink.FirstK first = new MatchSink.FirstK(5);
+		ri.solve(query, 5, pool, first);
+		pool.shutdown();
+		//matches found by other workers after the sink is full are not counted
+		assertEquals(ri.getNumMatches(), first.getNodes().size());
+		assertEquals(ri.getNumMatches(), 5);
+	}
+	
+	@Test
+	void testSolveBatch() {
+		initialize();
+		Vector<TemporalGraph> queries = new Vector<>();
+		queries.add(provaQuery);
+		queries.add(provaQuery);
+		Vector<Long> counts = new Vector<>();
+		Vector<Double> runningTimes = new Vector<>();
+		ri1.solveBatch(queries, 5, 2, counts, runningTimes);
+		assertEquals((long)counts.get(0), 2);
+		assertEquals((long)counts.get(1), 2);
+		assertEquals(runningTimes.size(), 2);
+	}
+	
+	@Test
+	void testSolveTimeWindows() {
+		TemporalGraph target = new TemporalGraph(true, 3);
+		target.addEdge(0,1,1).addEdge(0,1,2).addEdge(0,1,3).addEdge(1,2,4);
+		TemporalGraph query = new TemporalGraph(true, 2);
+		query.addEdge(0,1,1).addEdge(0,1,2);
+		RISolverTemporal ri = new RISolverTemporal(target, false);
+		//only contacts at times 2 and 3
+		ri.solve(query, 100, 2, 3);
+		assertEquals(ri.getNumMatches(), 1);
+		//windows wider than the target timeline find every match once
+		ri.solveWindows(query, 100, 10, 2);
+		assertEquals(ri.getNumMatches(), 3);
+	}
+	
+	@Test
+	void testStreaming() {
+		TemporalGraph query = new TemporalGraph(true, 3);
+		query.addEdge(0,1,1).addEdge(1,2,4);
+		RIStreamingTemporal stream = new RIStreamingTemporal(query, 5, 3, 5, null);
+		stream.addContact(0,1,1);
+		assertEquals(stream.addContact(1,2,4), 1);
+		//the contacts at times 1 and 4 leave the window
+		stream.addContact(0,1,10);
+		assertEquals(stream.getNumMatches(), 0);
+		assertEquals(stream.addContact(1,2,12), 1);
+		assertEquals(stream.getTotalMatches(), 2);
+	}
+	
+	@Test
+	void testStreamingWindowSignatures() {
+		TemporalGraph query = new TemporalGraph(true, 3);
+		query.addEdge(0,1,1).addEdge(0,1,2).addEdge(1,2,4);
+		RIStreamingTemporal bound = new RIStreamingTemporal(query, 5, 3, 20, null);
+		RIStreamingTemporal window = new RIStreamingTemporal(query, 5, 3, 20, null, RIStreamingTemporal.Signatures.WINDOW);
+		int[][] contacts = {{0,1,0}, {0,1,1}, {1,0,2}, {1,2,5}, {1,2,6}};
+		for(int[] contact : contacts) {
+			bound.addContact(contact[0], contact[1], contact[2]);
+			window.addContact(contact[0], contact[1], contact[2]);
+		}
+		//the match binding 1->2 at time 6 is dominated only thanks to the contact at time 5
+		assertEquals(bound.getNumMatches(), 1);
+		assertEquals(window.getNumMatches(), 2);
+		RISolverTemporal ri = new RISolverTemporal(window.getWindow(), false);
+		ri.solve(query, 5);
+		assertEquals(ri.getNumMatches(), window.getNumMatches());
+	}
+	
+	@Test
+	void testSearchStatistics() {
+		initialize();
+		ri1.setCollectStatistics(true);
+		ri1.solve(provaQuery, 5);
+		SearchStatistics statistics = ri1.getSearchStatistics();
+		int last = statistics.getNumStates()-1;
+		//every edge has a single contact, so each full mapping passing the checks is a match
+		assertEquals(statistics.getAccepted(last), 2);
+		assertEquals(statistics.getRejectedFinal(last), 0);
+	}
+
+	@Test
+	void testCostBasedOrderSymmetry() {
+		//leaves 1, 2 and 3 are symmetric within delta, so 3 has symmetry conditions on 1 and 2
+		TemporalGraph query = new TemporalGraph(true, 4);
+		query.addEdge(0,1,2).addEdge(0,2,2).addEdge(0,3,3);
+		TemporalGraph target = new TemporalGraph(true, 10);
+		target.addEdge(0,1,7).addEdge(0,2,4).addEdge(2,5,6).addEdge(2,5,9).addEdge(2,9,3).addEdge(3,4,3).addEdge(4,2,4).addEdge(4,6,2)
+			.addEdge(5,0,0).addEdge(5,4,4).addEdge(5,9,4).addEdge(6,5,0).addEdge(6,9,8).addEdge(7,6,8).addEdge(7,9,4)
+			.addEdge(8,0,1).addEdge(8,1,7).addEdge(8,4,3).addEdge(8,6,9).addEdge(9,1,4);
+		RISolverTemporal ri = new RISolverTemporal(target, false);
+		ri.solve(query, 3);
+		long matches = ri.getNumMatches();
+		//the cost-based order maps a leaf before the nodes of its conditions
+		ri.setCostBasedOrder(true);
+		ri.solve(query, 3);
+		assertEquals(ri.getNumMatches(), matches);
+	}
+
+	@Test
+	void testWindowWidth() {
+		//delta is larger than the time span of the query, so matches can be longer than span plus delta
+		TemporalGraph query = new TemporalGraph(true, 4);
+		query.addEdge(0,1,1).addEdge(1,2,2).addEdge(2,3,3);
+		TemporalGraph target = new TemporalGraph(true, 8);
+		target.addEdge(0,1,11).addEdge(1,2,20).addEdge(2,3,29).addEdge(4,5,0).addEdge(5,6,1).addEdge(6,7,2);
+		RISolverTemporal ri = new RISolverTemporal(target, false);
+		ri.solve(query, 10);
+		long matches = ri.getNumMatches();
+		ri.solveWindows(query, 10, RISolverTemporal.windowWidth(query, 10), 2);
+		assertEquals(ri.getNumMatches(), matches);
+	}
+
+	@Test
+	void testMachineEdgeTimes() {
+		TemporalGraph query = new TemporalGraph(true, 4);
+		//the edge 0->2 has no contact, so the adjacency and the contacts of node 0 have different keys
+		query.addEdge(0,1,3).addEdge(0,2).addEdge(0,3,9).addEdge(1,2,4).addEdge(3,1,5);
+		MatchingMachine mama = new MatchingMachine(query);
+		for(int e=0; e<mama.edge_offsets[mama.nof_sn]; e++) {
+			Contact contact = query.getOutAdjListTimes()[mama.map_state_to_node[mama.edge_sources[e]]].get(mama.map_state_to_node[mama.edge_targets[e]]);
+			assertEquals(mama.edge_times[e], contact == null ? 0 : contact.time);
+		}
+	}
+
+	@Test
+	void testOrderCheck() {
+		TemporalGraph query = new TemporalGraph(true, 4);
+		query.addEdge(0,1,1).addEdge(1,2,2).addEdge(2,3,3);
+		//the contact 2->3 comes before 1->2, but node 2 also has a later out contact, so its signature is compatible
+		TemporalGraph target = new TemporalGraph(true, 8);
+		target.addEdge(0,1,1).addEdge(1,2,5).addEdge(2,3,3).addEdge(2,7,6);
+		RISolverTemporal ri = new RISolverTemporal(target, false);
+		ri.setCollectStatistics(true);
+		ri.solve(query, 5);
+		assertEquals(ri.getNumMatches(), 1);
+		SearchStatistics statistics = ri.getSearchStatistics();
+		long rejected = 0;
+		for(int si=0; si<statistics.getNumStates(); si++)
+			rejected += statistics.getRejectedOrder(si);
+		assertEquals(rejected, 1);
+		assertEquals(statistics.getRejectedFinal(statistics.getNumStates()-1), 0);
+	}
+
+	@Test
+	void testCostBasedOrder() {
+		initialize();
+		ri1.setCostBasedOrder(true);
+		ri1.setCollectStatistics(true);
+		ri1.solve(provaQuery, 5);
+		assertEquals(ri1.getNumMatches(), 2);
+		//the first state maps the nodes of its domain
+		assertEquals(ri1.getSearchStatistics().getEstimatedNodes(0), ri1.getSearchStatistics().getAccepted(0), 1e-9);
+	}
+	
+	@Test
+	void testIntersect() {
+		int[] values = {1, 4, 7, 9, 12};
+		int[] sorted = {0, 2, 4, 5, 6, 7, 8, 10, 12, 15};
+		//only the range 1..8 of sorted is intersected
+		assertEquals(RISolverTemporal.intersect(values, values.length, sorted, 1, 9), 3);
+		assertArrayEquals(java.util.Arrays.copyOf(values, 3), new int[] {4, 7, 12});
+	}
+	
 
 }
@@ -0,0 +1,632 @@
+/*
+Continuous matching of a query graph over a stream of contacts kept in a sliding time window.
+Contacts arrive in time order and are added to a TemporalGraph holding the window, while contacts older than
+the window are removed from it. At each arrival only the new matches binding the arriving contact are searched:
+the search is anchored on each query edge, whose last contact is bound to the arriving one, and grows the mapping
+through the neighbors of the already mapped target nodes.
+A match is counted from the arrival of its latest contact until its earliest contact leaves the window.
+Matches are checked as in RISolverTemporal: the contacts of each query edge are bound in time order to distinct contacts
+of the mapped target edge, the symmetry breaking conditions of the query must hold, and the temporal signature
+and the delta conditions of the bound contacts must dominate those of the query.
+Where the temporal signatures of the target contacts are computed is chosen by Signatures:
+- BOUND_CONTACTS (default) computes them on the bound contacts only, as the TODO of the search of RISolverTemporal asks.
+A match then stays valid while other contacts arrive and leave, so the number of matches in the window is kept up to date
+incrementally. It can be lower than the count of RISolverTemporal on the same window, which also counts the matches
+whose signatures are dominated only thanks to other contacts of the window.
+- WINDOW computes them on the whole window, as RISolverTemporal does, and also requires each mapped target node
+to pass the compatibility test of the domains. The new matches of an arrival are the matches of RISolverTemporal on the window
+which bind it, but an arrival or an expiry can change the validity of matches not binding its contact,
+so the number of matches in the window is computed again by RISolverTemporal when asked.
+Only directed graphs are supported.
+*/
+
+import gnu.trove.iterator.TIntIterator;
+import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.util.Arrays;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.Vector;
+
+public class RIStreamingTemporal
+{
+	//Contacts the temporal signatures of the target contacts are computed on, see the class comment
+	public enum Signatures {BOUND_CONTACTS, WINDOW}
+
+	//Query graph and delta
+	private final TemporalGraph queryGraph;
+	private final int delta;
+	//Length of the window: contacts are kept while their time is at least the time of the last arrival minus width
+	private final long width;
+	//Contacts of the window
+	private final TemporalGraph window;
+	//Receiver of the new matches, null to only count them
+	private final MatchSink sink;
+	//Contacts of the signatures of the target contacts
+	private final Signatures signatures;
+	//Query edges: source, target and contacts, the contacts of edge e are numbered from edgeContactOffset[e]
+	private int[] edgeSource;
+	private int[] edgeTarget;
+	private int[] edgeContactOffset;
+	//Edge and time of each query contact
+	private int[] contactEdge;
+	private int[] queryTimes;
+	//Query contacts entering and leaving each query node, and delta conditions of the in contacts (see RISolverTemporal.deltaConditions)
+	private int[][] nodeInContacts;
+	private int[][] nodeOutContacts;
+	private int[][] nodeInConditions;
+	//Temporal signatures of the query contacts, 6 values for each contact (see TemporalGraph.nodeTemporalStructure)
+	private int[] querySignatures;
+	//Query symmetry breaking conditions
+	private Vector<Integer>[] symmCond;
+	//Search plan of each anchor edge: order in which query nodes are mapped, the mapped node the candidates of each one
+	//are taken from, are they its out neighbors (or in neighbors), and the query edges to check when it is mapped
+	private int[][] order;
+	private int[][] parent;
+	private boolean[][] parentOut;
+	private int[][][] checkEdges;
+	//Contacts of the window in order of arrival, a circular buffer of size contacts starting at head
+	private int[] arrivedSources=new int[16];
+	private int[] arrivedTargets=new int[16];
+	private int[] arrivedTimes=new int[16];
+	private int head, size;
+	//Number of matches in the window by the time of their earliest contact
+	private final TreeMap<Integer,Long> liveMatches=new TreeMap<>();
+	private long numMatches;
+	private long totalMatches;
+	//Number of matches of RISolverTemporal on the window with WINDOW signatures, -1 until asked after the last arrival
+	private long windowMatches=-1;
+	//Number of arrivals, time of the last one and time spent processing them, in nanoseconds
+	private long numEvents;
+	private int lastTime;
+	private long processingTime;
+	//Scratch arrays of the search
+	private final int[] mapping;
+	private final Contact[] edgeContacts;
+	private final int[] binding;
+	private final int[] contactTimes;
+	private final int[] conditions;
+	private final int[] signature=new int[6];
+	private boolean stopped;
+
+	/*
+	Constructor, with the signatures of the target contacts computed on the bound contacts
+	@param queryGraph: directed and weakly connected query graph
+	@param numNodes: number of nodes of the target, contacts of the stream are between nodes 0..numNodes-1
+	@param width: length of the window, in time units
+	@param sink: receiver of the new matches, null to only count them
+	*/
+	public RIStreamingTemporal(TemporalGraph queryGraph, int delta, int numNodes, long width, MatchSink sink)
+	{
+		this(queryGraph,delta,numNodes,width,sink,Signatures.BOUND_CONTACTS);
+	}
+
+	/*
+	Constructor
+	@param signatures: contacts the signatures of the target contacts are computed on, see the class comment
+	*/
+	public RIStreamingTemporal(TemporalGraph queryGraph, int delta, int numNodes, long width, MatchSink sink, Signatures signatures)
+	{
+		if(!queryGraph.isDirected())
+			throw new IllegalArgumentException("Only directed query graphs are supported");
+		this.queryGraph=queryGraph;
+		this.delta=delta;
+		this.width=width;
+		this.sink=sink;
+		this.signatures=signatures;
+		this.window=new TemporalGraph(true,numNodes);
+		buildContacts();
+		symmCond=queryGraph.getSymmetryConditions(delta);
+		buildPlans();
+		mapping=new int[queryGraph.getNumNodes()];
+		edgeContacts=new Contact[edgeSource.length];
+		binding=new int[queryTimes.length];
+		contactTimes=new int[queryTimes.length];
+		int maxInContacts=0;
+		for(int[] inContacts : nodeInContacts)
+			maxInContacts=Math.max(maxInContacts,inContacts.length);
+		conditions=new int[3*maxInContacts];
+	}
+
+	/*
+	Number the query edges and their contacts, in time order within each edge,
+	and compute the delta conditions of the in contacts of each query node
+	*/
+	private void buildContacts()
+	{
+		int numNodes=queryGraph.getNumNodes();
+		TIntObjectHashMap<Contact>[] outTimes=queryGraph.getOutAdjListTimes();
+		int numEdges=0;
+		for(int a=0; a<numNodes; a++)
+			numEdges+=outTimes[a].size();
+		edgeSource=new int[numEdges];
+		edgeTarget=new int[numEdges];
+		edgeContactOffset=new int[numEdges+1];
+		Contact[] contacts=new Contact[numEdges];
+		int e=0;
+		for(int a=0; a<numNodes; a++)
+		{
+			TIntObjectIterator<Contact> it=outTimes[a].iterator();
+			while(it.hasNext())
+			{
+				it.advance();
+				edgeSource[e]=a;
+				edgeTarget[e]=it.key();
+				contacts[e]=it.value();
+				edgeContactOffset[e+1]=edgeContactOffset[e]+contacts[e].numContacts();
+				e++;
+			}
+		}
+		queryTimes=new int[edgeContactOffset[numEdges]];
+		contactEdge=new int[queryTimes.length];
+		int[] inCount=new int[numNodes];
+		int[] outCount=new int[numNodes];
+		for(e=0; e<numEdges; e++)
+		{
+			for(int q=edgeContactOffset[e]; q<edgeContactOffset[e+1]; q++)
+			{
+				queryTimes[q]=contacts[e].getTime(q-edgeContactOffset[e]);
+				contactEdge[q]=e;
+			}
+			outCount[edgeSource[e]]+=contacts[e].numContacts();
+			inCount[edgeTarget[e]]+=contacts[e].numContacts();
+		}
+		nodeInContacts=new int[numNodes][];
+		nodeOutContacts=new int[numNodes][];
+		for(int x=0; x<numNodes; x++)
+		{
+			nodeInContacts[x]=new int[inCount[x]];
+			nodeOutContacts[x]=new int[outCount[x]];
+			inCount[x]=0;
+			outCount[x]=0;
+		}
+		for(int q=0; q<queryTimes.length; q++)
+		{
+			nodeOutContacts[edgeSource[contactEdge[q]]][outCount[edgeSource[contactEdge[q]]]++]=q;
+			nodeInContacts[edgeTarget[contactEdge[q]]][inCount[edgeTarget[contactEdge[q]]]++]=q;
+		}
+		nodeInConditions=new int[numNodes][];
+		for(int x=0; x<numNodes; x++)
+		{
+			nodeInConditions[x]=new int[3*nodeInContacts[x].length];
+			for(int k=0; k<nodeInContacts[x].length; k++)
+				RISolverTemporal.deltaConditions(queryTimes[nodeInContacts[x][k]],nodeOutContacts[x],queryTimes,delta,nodeInConditions[x],3*k);
+		}
+		querySignatures=new int[6*queryTimes.length];
+		for(int q=0; q<queryTimes.length; q++)
+			queryGraph.nodeTemporalStructure(edgeTarget[contactEdge[q]],queryTimes[q],delta,querySignatures,6*q);
+	}
+
+	/*
+	Build the search plan of each anchor edge: its source and target are mapped first,
+	then at each step the query node with most edges towards the mapped ones
+	*/
+	private void buildPlans()
+	{
+		int numNodes=queryGraph.getNumNodes();
+		int numEdges=edgeSource.length;
+		order=new int[numEdges][numNodes];
+		parent=new int[numEdges][numNodes];
+		parentOut=new boolean[numEdges][numNodes];
+		checkEdges=new int[numEdges][numNodes][];
+		for(int k=0; k<numEdges; k++)
+		{
+			boolean[] placed=new boolean[numNodes];
+			order[k][0]=edgeSource[k];
+			placed[edgeSource[k]]=true;
+			for(int p=1; p<numNodes; p++)
+			{
+				int best=-1, bestEdges=0;
+				if(p == 1)
+				{
+					best=edgeTarget[k];
+					bestEdges=1;
+				}
+				else
+				{
+					for(int x=0; x<numNodes; x++)
+					{
+						if(placed[x])
+							continue;
+						int edges=0;
+						for(int e=0; e<numEdges; e++)
+							if((edgeSource[e] == x && placed[edgeTarget[e]]) || (edgeTarget[e] == x && placed[edgeSource[e]]))
+								edges++;
+						if(edges > bestEdges)
+						{
+							best=x;
+							bestEdges=edges;
+						}
+					}
+				}
+				if(best < 0)
+					throw new IllegalArgumentException("The query graph must be weakly connected");
+				order[k][p]=best;
+				placed[best]=true;
+				int checked=0;
+				int[] edges=new int[numEdges];
+				for(int e=0; e<numEdges; e++)
+				{
+					if(e == k)
+						continue;
+					if((edgeSource[e] == best && placed[edgeTarget[e]] && edgeTarget[e] != best)
+							|| (edgeTarget[e] == best && placed[edgeSource[e]] && edgeSource[e] != best))
+						edges[checked++]=e;
+				}
+				checkEdges[k][p]=Arrays.copyOf(edges,checked);
+				//Candidates are the neighbors of the target node mapped to a query node adjacent to best
+				for(int e=0; e<numEdges && p > 1; e++)
+				{
+					if(edgeTarget[e] == best && placed[edgeSource[e]] && edgeSource[e] != best)
+					{
+						parent[k][p]=edgeSource[e];
+						parentOut[k][p]=true;
+						break;
+					}
+					if(edgeSource[e] == best && placed[edgeTarget[e]] && edgeTarget[e] != best)
+					{
+						parent[k][p]=edgeTarget[e];
+						parentOut[k][p]=false;
+						break;
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	Add a contact of the stream, remove the contacts which leave the window and search the new matches
+	@param time: time of the contact, not lower than the time of the previous one
+	@return number of new matches, i.e. matches binding this contact. With WINDOW signatures they are checked
+	on the window after this arrival, with BOUND_CONTACTS signatures on their own contacts, so the two can differ
+	*/
+	public long addContact(int source, int target, int time)
+	{
+		if(numEvents > 0 && time < lastTime)
+			throw new IllegalArgumentException("Contacts must arrive in time order: "+time+" after "+lastTime);
+		long inizio=System.nanoTime();
+		numEvents++;
+		lastTime=time;
+		windowMatches=-1;
+		expire((long)time-width);
+		window.addEdge(source,target,time);
+		if(size == arrivedTimes.length)
+		{
+			arrivedSources=grow(arrivedSources);
+			arrivedTargets=grow(arrivedTargets);
+			arrivedTimes=grow(arrivedTimes);
+			head=0;
+		}
+		int tail=(head+size)%arrivedTimes.length;
+		arrivedSources[tail]=source;
+		arrivedTargets[tail]=target;
+		arrivedTimes[tail]=time;
+		size++;
+
+		long found=0;
+		stopped=false;
+		if(source != target)
+		{
+			Contact contact=window.getOutAdjListTimes()[source].get(target);
+			for(int k=0; k<edgeSource.length && !stopped; k++)
+			{
+				if(contact.numContacts() < edgeContactOffset[k+1]-edgeContactOffset[k])
+					continue;
+				Arrays.fill(mapping,-1);
+				mapping[edgeSource[k]]=source;
+				mapping[edgeTarget[k]]=target;
+				found+=extend(k,1);
+			}
+		}
+		numMatches+=found;
+		totalMatches+=found;
+		processingTime+=System.nanoTime()-inizio;
+		return found;
+	}
+
+	/*
+	Circular buffer copied in a buffer of twice the size, starting from position 0
+	*/
+	private int[] grow(int[] buffer)
+	{
+		int[] grown=new int[2*buffer.length];
+		for(int i=0; i<size; i++)
+			grown[i]=buffer[(head+i)%buffer.length];
+		return grown;
+	}
+
+	/*
+	Remove the contacts with time lower than bound, and the matches which bind them
+	*/
+	private void expire(long bound)
+	{
+		while(size > 0 && arrivedTimes[head] < bound)
+		{
+			window.removeEdge(arrivedSources[head],arrivedTargets[head],arrivedTimes[head]);
+			head=(head+1)%arrivedTimes.length;
+			size--;
+		}
+		if(bound <= Integer.MIN_VALUE)
+			return;
+		SortedMap<Integer,Long> expired=liveMatches.headMap((int)Math.min(bound,Integer.MAX_VALUE));
+		for(long count : expired.values())
+			numMatches-=count;
+		expired.clear();
+	}
+
+	/*
+	Map the query node in position p of the plan of anchor edge k, and the following ones
+	@return number of matches found
+	*/
+	private long extend(int k, int p)
+	{
+		if(p == order[k].length)
+			return countBindings(k);
+		if(p == 1)
+			return edgesCheck(k,p) ? extend(k,p+1) : 0;
+		int x=order[k][p];
+		int y=mapping[parent[k][p]];
+		TIntHashSet neighbors=parentOut[k][p] ? window.getOutAdjList()[y] : window.getInAdjList()[y];
+		long found=0;
+		TIntIterator it=neighbors.iterator();
+		while(it.hasNext() && !stopped)
+		{
+			int ci=it.next();
+			boolean used=false;
+			for(int i=0; i<p && !used; i++)
+				used=mapping[order[k][i]] == ci;
+			if(used)
+				continue;
+			mapping[x]=ci;
+			if(edgesCheck(k,p))
+				found+=extend(k,p+1);
+		}
+		mapping[x]=-1;
+		return found;
+	}
+
+	/*
+	Check that the query edges between the node in position p of the plan of anchor edge k and the previous ones
+	are mapped to target edges with enough contacts
+	*/
+	private boolean edgesCheck(int k, int p)
+	{
+		for(int e : checkEdges[k][p])
+		{
+			Contact contact=window.getOutAdjListTimes()[mapping[edgeSource[e]]].get(mapping[edgeTarget[e]]);
+			if(contact == null || contact.numContacts() < edgeContactOffset[e+1]-edgeContactOffset[e])
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	Count the bindings of the query contacts to target contacts of a full mapping which bind the last contact
+	of anchor edge k to the arriving contact, the latest of its target edge
+	*/
+	private long countBindings(int k)
+	{
+		for(int x=0; x<symmCond.length; x++)
+			for(int i=0; i<symmCond[x].size(); i++)
+				if(mapping[x] < mapping[symmCond[x].get(i)])
+					return 0;
+		if(signatures == Signatures.WINDOW && !nodesCheck())
+			return 0;
+		for(int e=0; e<edgeSource.length; e++)
+			edgeContacts[e]=window.getOutAdjListTimes()[mapping[edgeSource[e]]].get(mapping[edgeTarget[e]]);
+		return bind(k,0);
+	}
+
+	/*
+	Check that each mapped target node is in the domain RISolverTemporal computes on the window for its query node
+	*/
+	private boolean nodesCheck()
+	{
+		for(int x=0; x<mapping.length; x++)
+		{
+			int y=mapping[x];
+			if(queryGraph.getOutAdjList()[x].size() > window.getOutAdjList()[y].size()
+					|| queryGraph.getInAdjList()[x].size() > window.getInAdjList()[y].size()
+					|| !queryGraph.testCompatibility(window,x,y,delta))
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	Bind query contact q and the following ones, see countBindings
+	*/
+	private long bind(int k, int q)
+	{
+		if(q == queryTimes.length)
+		{
+			if(!signaturesCheck() || !verifyMapping())
+				return 0;
+			report();
+			return 1;
+		}
+		int e=contactEdge[q];
+		Contact contact=edgeContacts[e];
+		int first=q == edgeContactOffset[e] ? 0 : binding[q-1]+1;
+		//Leave room for the following contacts of the same edge
+		int last=contact.numContacts()-(edgeContactOffset[e+1]-q);
+		if(e == k && q == edgeContactOffset[e+1]-1)
+			first=last;
+		long found=0;
+		for(int c=first; c<=last && !stopped; c++)
+		{
+			binding[q]=c;
+			contactTimes[q]=contact.getTime(c);
+			found+=bind(k,q+1);
+		}
+		return found;
+	}
+
+	/*
+	Check that the signature of each query contact is dominated by the signature of the bound contact,
+	computed as TemporalGraph.nodeTemporalStructure on the bound contacts or on the window
+	*/
+	private boolean signaturesCheck()
+	{
+		if(signatures == Signatures.WINDOW)
+		{
+			for(int q=0; q<queryTimes.length; q++)
+			{
+				window.nodeTemporalStructure(mapping[edgeTarget[contactEdge[q]]],contactTimes[q],delta,signature,0);
+				if(!TemporalGraph.controlTemporals(querySignatures,6*q,signature,0))
+					return false;
+			}
+			return true;
+		}
+		for(int q=0; q<queryTimes.length; q++)
+		{
+			int x=edgeTarget[contactEdge[q]];
+			long time=contactTimes[q];
+			int inInf=0, inDeltaRespected=0, outInf=0, outDeltaRespected=0;
+			for(int c : nodeInContacts[x])
+			{
+				if(contactTimes[c] <= time)
+				{
+					inInf++;
+					if(contactTimes[c] >= time-delta)
+						inDeltaRespected++;
+				}
+			}
+			for(int c : nodeOutContacts[x])
+			{
+				if(contactTimes[c] <= time)
+					outInf++;
+				else if(contactTimes[c] <= time+delta)
+					outDeltaRespected++;
+			}
+			int outSup=nodeOutContacts[x].length-outInf;
+			signature[0]=inInf;
+			signature[1]=nodeInContacts[x].length-inInf;
+			signature[2]=outInf;
+			signature[3]=outSup;
+			signature[4]=inInf-inDeltaRespected+outSup-outDeltaRespected;
+			signature[5]=inDeltaRespected+outDeltaRespected;
+			if(!TemporalGraph.controlTemporals(querySignatures,6*q,signature,0))
+				return false;
+		}
+		return true;
+	}
+
+	/*
+	Check the delta conditions of the bound contacts, as RISolverTemporal does for a full mapping
+	*/
+	private boolean verifyMapping()
+	{
+		for(int x=0; x<nodeInContacts.length; x++)
+		{
+			int[] inContacts=nodeInContacts[x];
+			int[] queryConditions=nodeInConditions[x];
+			for(int k=0; k<inContacts.length; k++)
+				RISolverTemporal.deltaConditions(contactTimes[inContacts[k]],nodeOutContacts[x],contactTimes,delta,conditions,3*k);
+			for(int j=0; j<3*inContacts.length; j+=3)
+			{
+				boolean dominated=false;
+				for(int k=0; k<3*inContacts.length && !dominated; k+=3)
+					dominated=queryConditions[j]<=conditions[k] && queryConditions[j+1]<=conditions[k+1] && queryConditions[j+2]<=conditions[k+2];
+				if(!dominated)
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	Record a new match until its earliest contact leaves the window, and pass it to the sink
+	*/
+	private void report()
+	{
+		int earliest=Integer.MAX_VALUE;
+		for(int time : contactTimes)
+			earliest=Math.min(earliest,time);
+		liveMatches.merge(earliest,1L,Long::sum);
+		if(sink != null && !sink.onMatch(mapping,contactTimes))
+			stopped=true;
+	}
+
+	/*
+	Number of matches in the window. With BOUND_CONTACTS signatures it is kept up to date by addContact,
+	and it can be lower than the count of RISolverTemporal on the window.
+	With WINDOW signatures it is the count of RISolverTemporal on the window, computed at the first call after an arrival
+	*/
+	public long getNumMatches()
+	{
+		if(signatures == Signatures.BOUND_CONTACTS)
+			return numMatches;
+		if(windowMatches < 0)
+		{
+			RISolverTemporal solver=new RISolverTemporal(window,false);
+			solver.solve(queryGraph,delta);
+			windowMatches=solver.getNumMatches();
+		}
+		return windowMatches;
+	}
+
+	/*
+	Number of matches found since the start of the stream
+	*/
+	public long getTotalMatches()
+	{
+		return totalMatches;
+	}
+
+	/*
+	Number of contacts in the window
+	*/
+	public int getNumContacts()
+	{
+		return size;
+	}
+
+	/*
+	Graph of the contacts in the window, updated by addContact and not to be modified
+	*/
+	public TemporalGraph getWindow()
+	{
+		return window;
+	}
+
+	/*
+	Number of contacts added and average time spent on each of them, in seconds
+	*/
+	public long getNumEvents()
+	{
+		return numEvents;
+	}
+
+	public double getAverageLatency()
+	{
+		return numEvents == 0 ? 0 : processingTime/1e9/numEvents;
+	}
+
+	/*
+	Source query node, target query node and time of each query contact,
+	in the order of the contact times passed to MatchSink.onMatch
+	*/
+	public int[] getQueryContactSources()
+	{
+		int[] sources=new int[queryTimes.length];
+		for(int q=0; q<sources.length; q++)
+			sources[q]=edgeSource[contactEdge[q]];
+		return sources;
+	}
+
+	public int[] getQueryContactTargets()
+	{
+		int[] targets=new int[queryTimes.length];
+		for(int q=0; q<targets.length; q++)
+			targets[q]=edgeTarget[contactEdge[q]];
+		return targets;
+	}
+
+	public int[] getQueryContactTimes()
+	{
+		return queryTimes.clone();
+	}
+}
@@ -0,0 +1,218 @@
+/*
+Counters of the search of RISolverTemporal for each state of the matching machine, to see where the search spends its time
+and which checks prune it. Each search stack fills its own counters without synchronization, and the counters
+of all the stacks of a solve are summed at the end.
+Candidates of a state are either rejected by one of the checks, in the order they are made, or mapped;
+mapped candidates of the last state are full mappings, rejected by the final check if no binding of their contacts passes it.
+When every edge has a single contact the final check is made on partial mappings by the order check, so no full mapping is rejected by it
+*/
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.util.Vector;
+
+public class SearchStatistics
+{
+	//Query node of each state
+	private final int[] stateNodes;
+	//Target nodes tried as candidates of each state
+	final long[] candidates;
+	//Candidates rejected because already mapped, not in the domain, by symmetry conditions, by the edges check
+	//and by the check on the time order and delta of the contacts of the nodes with all their contacts mapped
+	final long[] rejectedMatched;
+	final long[] rejectedDomain;
+	final long[] rejectedCondition;
+	final long[] rejectedEdges;
+	final long[] rejectedOrder;
+	//Full mappings rejected by the final check on the temporal structure of the mapped contacts
+	final long[] rejectedFinal;
+	//Times the candidates of each state ran out and the search went back to the previous state.
+	//In a parallel search a range of candidates split off to another task runs out on its own, so there are more backtracks
+	final long[] backtracks;
+	//Time spent processing the candidates of each state, in nanoseconds
+	final long[] nanos;
+	//Accepted candidates of each state estimated by a cost-based order, null if the order was not cost-based
+	private double[] estimatedNodes;
+
+	/*
+	Constructor
+	@param stateNodes: query node of each state, see MatchingMachine.map_state_to_node
+	*/
+	public SearchStatistics(int[] stateNodes)
+	{
+		this.stateNodes=stateNodes.clone();
+		int nof_sn=stateNodes.length;
+		candidates=new long[nof_sn];
+		rejectedMatched=new long[nof_sn];
+		rejectedDomain=new long[nof_sn];
+		rejectedCondition=new long[nof_sn];
+		rejectedEdges=new long[nof_sn];
+		rejectedOrder=new long[nof_sn];
+		rejectedFinal=new long[nof_sn];
+		backtracks=new long[nof_sn];
+		nanos=new long[nof_sn];
+	}
+
+	/*
+	Sum of the counters of the stacks of a search
+	*/
+	public static SearchStatistics sum(int[] stateNodes, Vector<SearchStatistics> statistics)
+	{
+		SearchStatistics total=new SearchStatistics(stateNodes);
+		for(SearchStatistics s : statistics)
+		{
+			for(int si=0; si<stateNodes.length; si++)
+			{
+				total.candidates[si]+=s.candidates[si];
+				total.rejectedMatched[si]+=s.rejectedMatched[si];
+				total.rejectedDomain[si]+=s.rejectedDomain[si];
+				total.rejectedCondition[si]+=s.rejectedCondition[si];
+				total.rejectedEdges[si]+=s.rejectedEdges[si];
+				total.rejectedOrder[si]+=s.rejectedOrder[si];
+				total.rejectedFinal[si]+=s.rejectedFinal[si];
+				total.backtracks[si]+=s.backtracks[si];
+				total.nanos[si]+=s.nanos[si];
+			}
+		}
+		return total;
+	}
+
+	/*
+	Set the estimated number of partial mappings up to each state, see MatchingMachine.estimated_nodes
+	*/
+	void setEstimatedNodes(double[] estimatedNodes)
+	{
+		this.estimatedNodes=estimatedNodes;
+	}
+
+	/*
+	Estimated accepted candidates of a state, to compare with getAccepted, NaN if the order was not cost-based
+	*/
+	public double getEstimatedNodes(int si)
+	{
+		return estimatedNodes == null ? Double.NaN : estimatedNodes[si];
+	}
+
+	public int getNumStates()
+	{
+		return stateNodes.length;
+	}
+
+	public int getStateNode(int si)
+	{
+		return stateNodes[si];
+	}
+
+	public long getCandidates(int si)
+	{
+		return candidates[si];
+	}
+
+	public long getRejectedMatched(int si)
+	{
+		return rejectedMatched[si];
+	}
+
+	public long getRejectedDomain(int si)
+	{
+		return rejectedDomain[si];
+	}
+
+	public long getRejectedCondition(int si)
+	{
+		return rejectedCondition[si];
+	}
+
+	public long getRejectedEdges(int si)
+	{
+		return rejectedEdges[si];
+	}
+
+	public long getRejectedOrder(int si)
+	{
+		return rejectedOrder[si];
+	}
+
+	public long getRejectedFinal(int si)
+	{
+		return rejectedFinal[si];
+	}
+
+	/*
+	Candidates of a state passing all the checks: partial mappings extended to the next state,
+	or full mappings passing the final check for the last state
+	*/
+	public long getAccepted(int si)
+	{
+		return candidates[si]-rejectedMatched[si]-rejectedDomain[si]-rejectedCondition[si]-rejectedEdges[si]-rejectedOrder[si]-rejectedFinal[si];
+	}
+
+	public long getBacktracks(int si)
+	{
+		return backtracks[si];
+	}
+
+	public double getTime(int si)
+	{
+		return nanos[si]/1e9;
+	}
+
+	/*
+	Counters as CSV, a line for each state
+	*/
+	public String toCsv()
+	{
+		StringBuilder csv=new StringBuilder("state,query node,candidates,rejected matched,rejected domain,rejected condition,"+
+				"rejected edges,rejected order,rejected final,accepted,estimated accepted,backtracks,time (secs)\n");
+		for(int si=0; si<stateNodes.length; si++)
+		{
+			csv.append(si).append(',').append(stateNodes[si]).append(',').append(candidates[si]).append(',')
+				.append(rejectedMatched[si]).append(',').append(rejectedDomain[si]).append(',').append(rejectedCondition[si]).append(',')
+				.append(rejectedEdges[si]).append(',').append(rejectedOrder[si]).append(',').append(rejectedFinal[si]).append(',').append(getAccepted(si)).append(',')
+				.append(estimatedNodes == null ? "" : String.valueOf(estimatedNodes[si])).append(',').append(backtracks[si]).append(',').append(getTime(si)).append('\n');
+		}
+		return csv.toString();
+	}
+
+	/*
+	Counters as a JSON array, an object for each state
+	*/
+	public String toJson()
+	{
+		StringBuilder json=new StringBuilder("[\n");
+		for(int si=0; si<stateNodes.length; si++)
+		{
+			json.append("  {\"state\": ").append(si).append(", \"queryNode\": ").append(stateNodes[si])
+				.append(", \"candidates\": ").append(candidates[si])
+				.append(", \"rejectedMatched\": ").append(rejectedMatched[si])
+				.append(", \"rejectedDomain\": ").append(rejectedDomain[si])
+				.append(", \"rejectedCondition\": ").append(rejectedCondition[si])
+				.append(", \"rejectedEdges\": ").append(rejectedEdges[si])
+				.append(", \"rejectedOrder\": ").append(rejectedOrder[si])
+				.append(", \"rejectedFinal\": ").append(rejectedFinal[si])
+				.append(", \"accepted\": ").append(getAccepted(si))
+				.append(", \"estimatedAccepted\": ").append(estimatedNodes == null ? "null" : String.valueOf(estimatedNodes[si]))
+				.append(", \"backtracks\": ").append(backtracks[si])
+				.append(", \"time\": ").append(getTime(si)).append('}');
+			json.append(si < stateNodes.length-1 ? ",\n" : "\n");
+		}
+		return json.append("]\n").toString();
+	}
+
+	/*
+	Write the counters in a file, as JSON if its name ends with .json and as CSV otherwise
+	*/
+	public void write(String file)
+	{
+		try
+		{
+			BufferedWriter bw=new BufferedWriter(new FileWriter(file));
+			bw.write(file.endsWith(".json") ? toJson() : toCsv());
+			bw.close();
+		}
+		catch(Exception e)
+		{
+			System.out.println(e.getMessage());
+		}
+	}
+}
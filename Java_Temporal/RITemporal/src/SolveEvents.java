@@ -0,0 +1,108 @@
+/*
+Java Flight Recorder events of RISolverTemporal: an event for each phase of a solve and a periodic progress event
+for each running search. Events are only built when they are enabled in a recording, e.g. with
+java -XX:StartFlightRecording:filename=solve.jfr,settings=profile ..., and shown in JDK Mission Control
+under the RI Temporal category. With no recording an event costs a check of a flag
+*/
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Period;
+import jdk.jfr.StackTrace;
+
+public final class SolveEvents
+{
+	private SolveEvents()
+	{
+	}
+
+	@Name("ritemporal.Domains")
+	@Label("Domains")
+	@Category({"RI Temporal", "Solve"})
+	@Description("Computation of the compatibility domains of the query nodes, arc consistency included")
+	@StackTrace(false)
+	static final class Domains extends Event
+	{
+		@Label("Query Nodes")
+		int queryNodes;
+		@Label("Target Nodes")
+		int targetNodes;
+		@Label("Threads")
+		int threads;
+		@Label("Initial Domain Size")
+		@Description("Sum of the domain sizes before arc consistency")
+		long initialSize;
+		@Label("Domain Size")
+		@Description("Sum of the domain sizes after arc consistency")
+		long size;
+		@Label("Revisions")
+		long revisions;
+	}
+
+	@Name("ritemporal.Symmetry")
+	@Label("Symmetry Conditions")
+	@Category({"RI Temporal", "Solve"})
+	@StackTrace(false)
+	static final class Symmetry extends Event
+	{
+		@Label("Conditions")
+		int conditions;
+	}
+
+	@Name("ritemporal.MachineBuild")
+	@Label("Matching Machine Build")
+	@Category({"RI Temporal", "Solve"})
+	@StackTrace(false)
+	static final class MachineBuild extends Event
+	{
+		@Label("States")
+		int states;
+	}
+
+	@Name("ritemporal.Search")
+	@Label("Search")
+	@Category({"RI Temporal", "Solve"})
+	@Description("Search of the matches, including the verification of the temporal structure of each full mapping")
+	@StackTrace(false)
+	static final class Search extends Event
+	{
+		@Label("Threads")
+		int threads;
+		@Label("Windows")
+		@Description("Windows searched by solveWindows, 0 for a search on the whole target")
+		int windows;
+		@Label("Root Candidates")
+		long rootCandidates;
+		@Label("Verified Mappings")
+		@Description("Full mappings whose temporal structure was verified")
+		long verifiedMappings;
+		@Label("Matches")
+		long matches;
+	}
+
+	@Name("ritemporal.Progress")
+	@Label("Search Progress")
+	@Category({"RI Temporal", "Solve"})
+	@Description("Progress of a running search, estimated from counters the workers update without synchronization")
+	@Period("1 s")
+	@StackTrace(false)
+	static final class Progress extends Event
+	{
+		@Label("Explored Fraction")
+		@Description("Fraction of the root candidates, or of the windows, already explored")
+		double exploredFraction;
+		@Label("Matches")
+		long matches;
+		@Label("Matches Per Second")
+		@Description("Average since the search started")
+		double matchesPerSecond;
+		@Label("Active Workers")
+		int activeWorkers;
+		@Label("Depth Distribution")
+		@Description("Number of workers at each state of the matching machine, as state:workers")
+		String depthDistribution;
+	}
+}
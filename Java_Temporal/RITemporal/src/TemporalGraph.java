@@ -6,10 +6,8 @@ import gnu.trove.set.hash.TIntHashSet;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
-import java.util.List;
 import java.util.Map;
 import java.util.Vector;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 
@@ -23,6 +21,11 @@ public class TemporalGraph {
     private final TIntObjectHashMap<Contact>[] inAdjListTimes;
     private final boolean directed;
     private int numedges;
+    //Times of the out and in contacts of each node sorted by time, built on demand by sortTimes
+    private volatile int[][] outTimesSorted;
+    private volatile int[][] inTimesSorted;
+    //Scratch arrays of the delta conditions of the query and target nodes tested by testCompatibility, one pair for each thread
+    private static final ThreadLocal<int[][]> conditionsScratch = ThreadLocal.withInitial(() -> new int[][] {new int[48], new int[48]});
 	/*
 	Constructor
 	@param directed: is the graph directed or not?
@@ -65,22 +68,77 @@ public class TemporalGraph {
     
     public TemporalGraph addEdge(int source, int dest,int time)
     {
+    	outTimesSorted = null;
+    	inTimesSorted = null;
     	numedges++;
         outAdjList[source].add(dest);
         inAdjList[dest].add(source);
-        Contact outnew = new Contact(dest, time);
-        Contact innew = new Contact(source, time);
-        outAdjListTimes[source].put(outnew.hashCode(), outnew);
-        inAdjListTimes[dest].put(innew.hashCode(), innew);
+        addContact(outAdjListTimes[source], dest, time);
+        addContact(inAdjListTimes[dest], source, time);
         if(!directed)
         {
-        	outAdjListTimes[dest].put(innew.hashCode(), innew);
-            inAdjListTimes[source].put(outnew.hashCode(), outnew);
+        	addContact(outAdjListTimes[dest], source, time);
+        	addContact(inAdjListTimes[source], dest, time);
             outAdjList[dest].add(source);
             inAdjList[source].add(dest);
         }
         return this;
     }
+    
+    /*
+    Remove a contact from source to dest at the given time, removing the edge when it was its last contact
+    @return true if there was such a contact
+    */
+    public boolean removeEdge(int source, int dest, int time)
+    {
+    	if(!removeContact(outAdjListTimes[source], dest, time))
+    		return false;
+    	outTimesSorted = null;
+    	inTimesSorted = null;
+    	numedges--;
+    	removeContact(inAdjListTimes[dest], source, time);
+    	if(!outAdjListTimes[source].containsKey(dest)) {
+    		outAdjList[source].remove(dest);
+    		inAdjList[dest].remove(source);
+    	}
+    	if(!directed) {
+    		removeContact(outAdjListTimes[dest], source, time);
+    		removeContact(inAdjListTimes[source], dest, time);
+    		if(!outAdjListTimes[dest].containsKey(source)) {
+    			outAdjList[dest].remove(source);
+    			inAdjList[source].remove(dest);
+    		}
+    	}
+    	return true;
+    }
+    
+    /*
+    Remove a contact with node at the given time, and the Contact itself if it was its last time
+    */
+    private static boolean removeContact(TIntObjectHashMap<Contact> adjListTimes, int node, int time)
+    {
+    	Contact contact = adjListTimes.get(node);
+    	if(contact == null)
+    		return false;
+    	if(contact.numContacts() > 1)
+    		return contact.removeTime(time);
+    	if(contact.time != time)
+    		return false;
+    	adjListTimes.remove(node);
+    	return true;
+    }
+    
+    /*
+    Add a contact with node at the given time, repeated contacts with the same node are kept in the same Contact
+    */
+    private static void addContact(TIntObjectHashMap<Contact> adjListTimes, int node, int time)
+    {
+    	Contact contact = adjListTimes.get(node);
+    	if(contact == null)
+    		adjListTimes.put(node, new Contact(node, time));
+    	else
+    		contact.addTime(time);
+    }
 
     /*
     Get the adjacency string of the graph.
@@ -319,8 +377,9 @@ public class TemporalGraph {
                     	Contact cont2 = outAdjListTimes[n].get(fDir[j]);
                         if(outAdjList[m].contains(j)!=outAdjList[n].contains(fDir[j]) ||
                         		(cont1!=null &&
-                    			cont2!=null &&		
-                        		!controlTemporals(nodeTemporalStructure(cont1.node,cont1.time,delta),nodeTemporalStructure(cont2.node,cont2.time,delta)))
+                    			cont2!=null &&
+                    			(cont1.numContacts()!=cont2.numContacts() ||
+                        		!controlTemporals(nodeTemporalStructure(cont1.node,cont1.time,delta),nodeTemporalStructure(cont2.node,cont2.time,delta))))
                         		)
                         {
                             flag=true;
@@ -332,7 +391,8 @@ public class TemporalGraph {
                         	if(outAdjList[j].contains(m)!=outAdjList[fDir[j]].contains(n) ||
                         			(cont1!=null &&
                         			cont2!=null &&
-                        			!controlTemporals(nodeTemporalStructure(cont1.node,cont1.time,delta),nodeTemporalStructure(cont2.node,cont2.time,delta)))
+                        			(cont1.numContacts()!=cont2.numContacts() ||
+                        			!controlTemporals(nodeTemporalStructure(cont1.node,cont1.time,delta),nodeTemporalStructure(cont2.node,cont2.time,delta))))
                         			)
                         	{
 	                            flag=true;
@@ -368,6 +428,19 @@ public class TemporalGraph {
     	 return retval;
      }
      
+     /**
+      * compare two signatures stored in arrays, as controlTemporals
+      *
+      * @param s1: array containing the first signature
+      * @param o1: offset of the first signature
+      * @param s2: array containing the second signature
+      * @param o2: offset of the second signature
+      * @return Boolean: true if every value of the first signature is not greater than the second one
+      */
+     public static boolean controlTemporals(int[] s1,int o1,int[] s2,int o2){
+    	 return s1[o1]<=s2[o2] && s1[o1+1]<=s2[o2+1] && s1[o1+2]<=s2[o2+2] && s1[o1+3]<=s2[o2+3] && s1[o1+4]<=s2[o2+4] && s1[o1+5]<=s2[o2+5];
+     }
+     
      /**
       * Computes 6 numbers, number of edges that have contact
       * @param destination: contact destination
@@ -375,61 +448,45 @@ public class TemporalGraph {
       * @param delta: control over paths and consecutive edges
       */
      public Vector<Integer> nodeTemporalStructure(int destination,int time,int delta){
-       int inInf = 0;
-       int inSup = 0;
-       int inDeltaRespected = 0;
-       int inDeltaNotRespected = 0;
-       
-       int outInf = 0;
-       int outSup = 0;
-       int outDeltaRespected = 0;
-       int outDeltaNotRespected = 0;
+       int[] signature = new int[6];
+       nodeTemporalStructure(destination,time,delta,signature,0);
+       Vector<Integer> returnVal = new Vector<Integer>(6);
+       for(int value : signature)
+    	   returnVal.add(value);
+       return returnVal;
+     }
+     
+     /**
+      * Computes the 6 numbers of nodeTemporalStructure into an array
+      * @param destination: contact destination
+      * @param time: contact time
+      * @param delta: control over paths and consecutive edges
+      * @param signature: array where the numbers are stored
+      * @param offset: position of the first number
+      */
+     public void nodeTemporalStructure(int destination,int time,int delta,int[] signature,int offset){
+       int[] inTimes = getInTimesSorted()[destination];
+       int[] outTimes = getOutTimesSorted()[destination];
        //computing times |inf| and |sup| for in edges
-       TIntObjectIterator<Contact> initeratore = inAdjListTimes[destination].iterator();
-       while (initeratore.hasNext()){
-         initeratore.advance();
-         Contact element = initeratore.value();
-         if(element.time > time) {
-        	 inSup ++;
-         } else if (element.time <= time) {
-        	 inInf++;
-        	 if(time - element.time <= delta) {
-        		 inDeltaRespected++;
-        	 } else {
-        		 inDeltaNotRespected++;
-        	 }
-         }
-         
-       }
+       int inInf = TemporalGraphCSR.countTimes(inTimes, 0, inTimes.length, Long.MIN_VALUE, time);
+       int inSup = inTimes.length - inInf;
+       int inDeltaRespected = TemporalGraphCSR.countTimes(inTimes, 0, inTimes.length, (long)time - delta, time);
+       int inDeltaNotRespected = inInf - inDeltaRespected;
        
        //TODO manage contacts that have the same times
 
        //computing times |inf| and |sup| for out edges
-       TIntObjectIterator<Contact> outiteratore = outAdjListTimes[destination].iterator();
-       while (outiteratore.hasNext()){
-         outiteratore.advance();
-         Contact element = outiteratore.value();
-         if(element.time > time) {
-        	 outSup ++;
-        	 if(element.time - time <= delta) {
-        		 inDeltaRespected++;
-        	 } else {
-        		 inDeltaNotRespected++;
-        	 }
-        	 
-         } else if (element.time <= time) {
-        	 outInf++;
-        	 
-         } 
-       }
-       Vector<Integer> returnVal = new Vector<Integer>(6);
-       returnVal.add(inInf);
-       returnVal.add(inSup);
-       returnVal.add(outInf);
-       returnVal.add(outSup);
-       returnVal.add(inDeltaNotRespected);
-       returnVal.add(inDeltaRespected);
-       return returnVal;
+       int outInf = TemporalGraphCSR.countTimes(outTimes, 0, outTimes.length, Long.MIN_VALUE, time);
+       int outSup = outTimes.length - outInf;
+       int outDeltaRespected = TemporalGraphCSR.countTimes(outTimes, 0, outTimes.length, (long)time + 1, (long)time + delta);
+       inDeltaRespected += outDeltaRespected;
+       inDeltaNotRespected += outSup - outDeltaRespected;
+       signature[offset] = inInf;
+       signature[offset+1] = inSup;
+       signature[offset+2] = outInf;
+       signature[offset+3] = outSup;
+       signature[offset+4] = inDeltaNotRespected;
+       signature[offset+5] = inDeltaRespected;
      }
      
      /**
@@ -442,75 +499,81 @@ public class TemporalGraph {
       * @return Boolean: true if compatibility is possible, false otherwise
       */
     public boolean testCompatibility(TemporalGraph target,int nodeQ,int nodeT,int delta){
-          
-      int inQuerySize = inAdjList[nodeQ].size();
-      int inTargetSize = target.inAdjList[nodeT].size();
-      Conditions[] deltaConditionQuery = new Conditions[inQuerySize];
-      Conditions[] deltaConditionTarget = new Conditions[inTargetSize];
-
-      TIntObjectIterator<Contact> inIteratorQuery = inAdjListTimes[nodeQ].iterator();   
-      int i = 0;
-      while(inIteratorQuery.hasNext()){
-        deltaConditionQuery[i]= new Conditions(0,0,0);
-        inIteratorQuery.advance();
-        Contact elementQueryin = inIteratorQuery.value();
-        TIntObjectIterator<Contact> outIteratorQuery = outAdjListTimes[nodeQ].iterator();
-        int x =elementQueryin.time;
-        while(outIteratorQuery.hasNext()){
-          outIteratorQuery.advance();
-          Contact elementQueryout = outIteratorQuery.value();
-          if (x < elementQueryout.time && (elementQueryout.time - x) <= delta ) {
-        	  deltaConditionQuery[i].deltaRespected++;
-          } else if (x < elementQueryout.time && (elementQueryout.time - x) > delta ) {
-        	  deltaConditionQuery[i].deltaNotRespected++;
-          } else if (x >= elementQueryout.time) {
-        	  deltaConditionQuery[i].notTimeRespecting++;
-          }
-        }
-        i++;
-      }
-      TIntObjectIterator<Contact> inIteratorTarget = target.inAdjListTimes[nodeT].iterator();
-      i=0;
-      while(inIteratorTarget.hasNext()){
-        deltaConditionTarget[i]= new Conditions(0,0,0);
-        inIteratorTarget.advance();
-        Contact elementTargetin = inIteratorTarget.value();
-        TIntObjectIterator<Contact> outIteratorTarget = target.outAdjListTimes[nodeT].iterator();
-        int x = elementTargetin.time;
-        while(outIteratorTarget.hasNext()){
-          outIteratorTarget.advance();
-          Contact elementTargetout = outIteratorTarget.value();
-          if (x < elementTargetout.time && (elementTargetout.time - x) <= delta ) {
-        	  deltaConditionTarget[i].deltaRespected++;
-          } else if (x < elementTargetout.time && (elementTargetout.time - x) > delta ) {
-        	  deltaConditionTarget[i].deltaNotRespected++;
-          } else if (x >= elementTargetout.time) {
-        	  deltaConditionTarget[i].notTimeRespecting++;
-          }
-          
-        }
-        i++;
-      }
-      //var inEdgeMatched = new Array[Short](inAdjList(nodeQ).size())
-      int matchedInEdges = 0;
-      try{
-    	int j=0;
-        for(j=0;j<deltaConditionQuery.length;j++){
-        	Conditions condQuery = deltaConditionQuery[j];
-        	List<Conditions> condizioni =  Arrays.asList(deltaConditionTarget);
-            List<Conditions> partialmap = condizioni.parallelStream().
-            		filter(condi -> (condQuery.LTOE(condi))).
-            		collect(Collectors.toList());
-              if(partialmap.size() > 0){
-                  matchedInEdges ++;
-            }
-        }
-      } catch (Exception e) {
-
-      }
+      int[] inTimes = target.getInTimesSorted()[nodeT];
+      int[] outTimes = target.getOutTimesSorted()[nodeT];
       //first condition can be omitted if degree condition is computed outside
       //((target.inAdjList(nodeT).size >= inAdjList(nodeQ).size && target.outAdjList(nodeT).size >= outAdjList(nodeQ).size) && 
-      return (matchedInEdges == inAdjList[nodeQ].size());//)  
+      return testCompatibility(nodeQ, inTimes, 0, inTimes.length, outTimes, 0, outTimes.length, delta);
+    }
+    
+    /**
+     * test compatibility of a node of a CSR target for a node in this temporal graph
+     *
+     * @param target: CSR snapshot of the target Temporal Graph
+     * @param nodeQ: node to compare in this Graph
+     * @param nodeT: node to compare in other Graph
+     * @param delta: number that represent delta condition
+     * @return Boolean: true if compatibility is possible, false otherwise
+     */
+    public boolean testCompatibility(TemporalGraphCSR target,int nodeQ,int nodeT,int delta){
+      return testCompatibility(nodeQ, target.getInTimesByTime(), target.inContactsBegin(nodeT), target.inContactsEnd(nodeT),
+    		  target.getOutTimesByTime(), target.outContactsBegin(nodeT), target.outContactsEnd(nodeT), delta);
+    }
+    
+    /*
+    Test compatibility of a target node, given by its in and out contact times sorted by time, for a node in this graph:
+    the delta conditions of every in contact of nodeQ must be dominated by the delta conditions of some in contact of the target node
+    */
+    private boolean testCompatibility(int nodeQ, int[] inTimes, int inBegin, int inEnd, int[] outTimes, int outBegin, int outEnd, int delta){
+      int[] queryInTimes = getInTimesSorted()[nodeQ];
+      int[] queryOutTimes = getOutTimesSorted()[nodeQ];
+      int[][] scratch = conditionsScratch.get();
+      if(scratch[0].length < 3*queryInTimes.length)
+        scratch[0] = new int[3*queryInTimes.length];
+      if(scratch[1].length < 3*(inEnd-inBegin))
+        scratch[1] = new int[Math.max(3*(inEnd-inBegin), 2*scratch[1].length)];
+      deltaConditions(queryInTimes, 0, queryInTimes.length, queryOutTimes, 0, queryOutTimes.length, delta, scratch[0]);
+      deltaConditions(inTimes, inBegin, inEnd, outTimes, outBegin, outEnd, delta, scratch[1]);
+      return dominated(scratch[0], queryInTimes.length, scratch[1], inEnd-inBegin);
+    }
+    
+    /*
+    Delta conditions of in contacts inTimes[inBegin..inEnd-1] with respect to out contacts outTimes[outBegin..outEnd-1],
+    counted with binary searches on the out times sorted by time.
+    3 values for each in contact, in conditions: number of out contacts not time respecting, not respecting delta and respecting delta
+    */
+    private static void deltaConditions(int[] inTimes, int inBegin, int inEnd, int[] outTimes, int outBegin, int outEnd, int delta, int[] conditions){
+      for(int i = inBegin, k = 0; i < inEnd; i++, k += 3){
+        int x = inTimes[i];
+        int notTimeRespecting = TemporalGraphCSR.countTimes(outTimes, outBegin, outEnd, Long.MIN_VALUE, x);
+        int deltaRespected = TemporalGraphCSR.countTimes(outTimes, outBegin, outEnd, (long)x + 1, (long)x + delta);
+        conditions[k] = notTimeRespecting;
+        conditions[k+1] = outEnd - outBegin - notTimeRespecting - deltaRespected;
+        conditions[k+2] = deltaRespected;
+      }
+    }
+    
+    /*
+    True if each of the numQuery query conditions is dominated by at least one of the numTarget target conditions.
+    Conditions are in order of in contact time, so notTimeRespecting never decreases in both arrays:
+    target conditions with too few contacts not time respecting are skipped once for all the following query conditions,
+    the scan for a query condition stops at the first dominating target condition,
+    equal consecutive query conditions are tested once and the test stops at the first query condition not dominated
+    */
+    private static boolean dominated(int[] query, int numQuery, int[] target, int numTarget){
+      int first = 0;
+      for(int j = 0; j < 3*numQuery; j += 3){
+        if(j > 0 && query[j] == query[j-3] && query[j+1] == query[j-2] && query[j+2] == query[j-1])
+          continue;
+        while(first < 3*numTarget && target[first] < query[j])
+          first += 3;
+        boolean found = false;
+        for(int k = first; k < 3*numTarget && !found; k += 3)
+          found = query[j+1] <= target[k+1] && query[j+2] <= target[k+2];
+        if(!found)
+          return false;
+      }
+      return true;
     }
     
 	/**
@@ -546,7 +609,8 @@ public class TemporalGraph {
 	            outIterator.advance();
 	            Contact element = outIterator.value();
 	            if(nodes.contains(element.node))
-	            	retGraph.addEdge(srcIndex, nodes.indexOf(element.node),element.time);
+	            	for(int k = 0; k < element.numContacts(); k++)
+	            		retGraph.addEdge(srcIndex, nodes.indexOf(element.node),element.getTime(k));
 	    	}
 	    	
 			
@@ -565,7 +629,8 @@ public class TemporalGraph {
 	            outIterator.advance();
 	            Contact element = outIterator.value();
 	            if(nodes.contains(element.node) && edges[nodes.indexOf(integer)].contains(nodes.indexOf(element.node)))
-	            	retGraph.addEdge(srcIndex, nodes.indexOf(element.node),element.time);
+	            	for(int k = 0; k < element.numContacts(); k++)
+	            		retGraph.addEdge(srcIndex, nodes.indexOf(element.node),element.getTime(k));
 	    	}
 	    	
 			
@@ -573,6 +638,167 @@ public class TemporalGraph {
     	return retGraph;
     }
     
+    /*
+    Sort the times of the contacts of each node, so that temporal range queries take O(log degree)
+    */
+    private synchronized void sortTimes() {
+    	if(outTimesSorted != null)
+    		return;
+    	int numNodes = getNumNodes();
+    	int[][] outSorted = new int[numNodes][];
+    	int[][] inSorted = new int[numNodes][];
+    	for(int i = 0; i < numNodes; i++) {
+    		outSorted[i] = contactTimes(outAdjListTimes[i]);
+    		inSorted[i] = contactTimes(inAdjListTimes[i]);
+    	}
+    	inTimesSorted = inSorted;
+    	outTimesSorted = outSorted;
+    }
+    
+    private static int[] contactTimes(TIntObjectHashMap<Contact> adjListTimes) {
+    	int numContacts = 0;
+    	TIntObjectIterator<Contact> it = adjListTimes.iterator();
+    	while(it.hasNext()) {
+    		it.advance();
+    		numContacts += it.value().numContacts();
+    	}
+    	int[] times = new int[numContacts];
+    	int i = 0;
+    	it = adjListTimes.iterator();
+    	while(it.hasNext()) {
+    		it.advance();
+    		Contact contact = it.value();
+    		for(int k = 0; k < contact.numContacts(); k++)
+    			times[i++] = contact.getTime(k);
+    	}
+    	Arrays.sort(times);
+    	return times;
+    }
+    
+    /*
+    Get the times of the out contacts of each node, sorted by time
+    */
+    public int[][] getOutTimesSorted() {
+    	if(outTimesSorted == null)
+    		sortTimes();
+    	return outTimesSorted;
+    }
+    
+    /*
+    Get the times of the in contacts of each node, sorted by time
+    */
+    public int[][] getInTimesSorted() {
+    	if(outTimesSorted == null)
+    		sortTimes();
+    	return inTimesSorted;
+    }
+    
+    /*
+    Number of out contacts of a node with time in [from,to]
+    */
+    public int countOutContacts(int node, long from, long to) {
+    	int[] times = getOutTimesSorted()[node];
+    	return TemporalGraphCSR.countTimes(times, 0, times.length, from, to);
+    }
+    
+    /*
+    Number of in contacts of a node with time in [from,to]
+    */
+    public int countInContacts(int node, long from, long to) {
+    	int[] times = getInTimesSorted()[node];
+    	return TemporalGraphCSR.countTimes(times, 0, times.length, from, to);
+    }
+    
+    /**
+     * build an immutable CSR snapshot of the graph, used by the solver on large targets
+     * @return CSR snapshot with the edges of each node sorted by neighbor id and the contacts of each edge sorted by time
+     */
+    public TemporalGraphCSR freeze() {
+    	int numNodes = getNumNodes();
+    	int[] outOffsets = new int[numNodes+1];
+    	int[] inOffsets = new int[numNodes+1];
+    	for(int i = 0; i < numNodes; i++) {
+    		outOffsets[i+1] = outOffsets[i] + outAdjList[i].size();
+    		inOffsets[i+1] = inOffsets[i] + inAdjList[i].size();
+    	}
+    	int[] outNeighbors = new int[outOffsets[numNodes]];
+    	int[] inNeighbors = new int[inOffsets[numNodes]];
+    	int[] outEdgeOffsets = new int[outOffsets[numNodes]+1];
+    	int[] inEdgeOffsets = new int[inOffsets[numNodes]+1];
+    	for(int i = 0; i < numNodes; i++) {
+    		fillEdges(outAdjList[i], outAdjListTimes[i], outNeighbors, outEdgeOffsets, outOffsets[i]);
+    		fillEdges(inAdjList[i], inAdjListTimes[i], inNeighbors, inEdgeOffsets, inOffsets[i]);
+    	}
+    	int[] outTimes = new int[outEdgeOffsets[outNeighbors.length]];
+    	int[] inTimes = new int[inEdgeOffsets[inNeighbors.length]];
+    	for(int i = 0; i < numNodes; i++) {
+    		fillTimes(outAdjListTimes[i], outNeighbors, outEdgeOffsets, outTimes, outOffsets[i], outOffsets[i+1]);
+    		fillTimes(inAdjListTimes[i], inNeighbors, inEdgeOffsets, inTimes, inOffsets[i], inOffsets[i+1]);
+    	}
+    	//edges with a single contact do not need contact offsets
+    	if(outTimes.length == outNeighbors.length && inTimes.length == inNeighbors.length) {
+    		outEdgeOffsets = null;
+    		inEdgeOffsets = null;
+    	}
+    	return new TemporalGraphCSR(directed, numedges, outOffsets, outNeighbors, outEdgeOffsets, outTimes, inOffsets, inNeighbors, inEdgeOffsets, inTimes);
+    }
+    
+    /*
+    Store the sorted neighbors of a node from position pos and the end of the contact range of each edge
+    */
+    private static void fillEdges(TIntHashSet adjList, TIntObjectHashMap<Contact> adjListTimes, int[] neighbors, int[] edgeOffsets, int pos) {
+    	int begin = pos;
+    	TIntIterator it = adjList.iterator();
+    	while(it.hasNext())
+    		neighbors[pos++] = it.next();
+    	Arrays.sort(neighbors, begin, pos);
+    	for(int e = begin; e < pos; e++) {
+    		Contact contact = adjListTimes.get(neighbors[e]);
+    		//edges added without a time get a single contact at time 0
+    		edgeOffsets[e+1] = edgeOffsets[e] + (contact != null ? contact.numContacts() : 1);
+    	}
+    }
+    
+    /*
+    Store the sorted times of the contacts of edges begin..end-1, releasing the unused capacity of their Contacts
+    */
+    private static void fillTimes(TIntObjectHashMap<Contact> adjListTimes, int[] neighbors, int[] edgeOffsets, int[] times, int begin, int end) {
+    	for(int e = begin; e < end; e++) {
+    		Contact contact = adjListTimes.get(neighbors[e]);
+    		if(contact != null)
+    			contact.trim();
+    		for(int k = edgeOffsets[e]; k < edgeOffsets[e+1]; k++)
+    			times[k] = contact != null ? contact.getTime(k - edgeOffsets[e]) : 0;
+    	}
+    }
+    
+    /**
+     * estimated heap size of the adjacency structures, in bytes
+     * (Trove tables store one key and one state byte per slot, maps one reference more, plus a Contact per entry)
+     */
+    public long estimatedBytes() {
+    	long bytes = 0;
+    	for(int i = 0; i < getNumNodes(); i++) {
+    		bytes += 64 + 5L*outAdjList[i].capacity();
+    		bytes += 64 + 5L*inAdjList[i].capacity();
+    		bytes += 64 + 9L*outAdjListTimes[i].capacity() + 24L*outAdjListTimes[i].size();
+    		bytes += 64 + 9L*inAdjListTimes[i].capacity() + 24L*inAdjListTimes[i].size();
+    		bytes += contactArraysBytes(outAdjListTimes[i]) + contactArraysBytes(inAdjListTimes[i]);
+    	}
+    	return bytes;
+    }
+    
+    private static long contactArraysBytes(TIntObjectHashMap<Contact> adjListTimes) {
+    	long bytes = 0;
+    	TIntObjectIterator<Contact> it = adjListTimes.iterator();
+    	while(it.hasNext()) {
+    		it.advance();
+    		if(it.value().times != null)
+    			bytes += 16 + 4L*it.value().times.length;
+    	}
+    	return bytes;
+    }
+    
     public int getRandomNumber(int min, int max) {
 	    return (int) ((Math.random() * (max - min)) + min);
 	}
@@ -704,5 +930,9 @@ public class TemporalGraph {
 		return numedges;
 	}
 
+	public boolean isDirected() {
+		return directed;
+	}
+
 
 }
@@ -0,0 +1,499 @@
+/*
+Immutable compressed sparse row (CSR) snapshot of a TemporalGraph, built by TemporalGraph.freeze().
+Out edges of node i are stored in positions outOffsets[i]..outOffsets[i+1]-1 of outNeighbors,
+in edges of node i in positions inOffsets[i]..inOffsets[i+1]-1 of inNeighbors.
+Each range is sorted by neighbor id.
+Contacts of out edge e are stored in positions outEdgeOffsets[e]..outEdgeOffsets[e+1]-1 of outTimes, sorted by time
+(resp. inEdgeOffsets and inTimes for in edges).
+When every edge has a single contact the edge offsets are null and edge e has its only contact in position e.
+outTimesByTime and inTimesByTime hold the same times with the contacts of each node sorted by time,
+so that temporal range queries take O(log degree).
+*/
+
+import java.util.Arrays;
+import java.util.Vector;
+import java.util.stream.IntStream;
+
+public class TemporalGraphCSR
+{
+	//Is the graph directed or not?
+	private final boolean directed;
+	private final int numNodes;
+	private final int numedges;
+	//Out edges: offsets of each node, neighbor ids, offsets of the contacts of each edge and contact times
+	private final int[] outOffsets;
+	private final int[] outNeighbors;
+	private final int[] outEdgeOffsets;
+	private final int[] outTimes;
+	//In edges: offsets of each node, neighbor ids, offsets of the contacts of each edge and contact times
+	private final int[] inOffsets;
+	private final int[] inNeighbors;
+	private final int[] inEdgeOffsets;
+	private final int[] inTimes;
+	//Times of out and in contacts, contacts of each node sorted by time
+	private final int[] outTimesByTime;
+	private final int[] inTimesByTime;
+
+	/*
+	Constructor
+	Arrays are not copied, edges of each node must already be sorted by neighbor id
+	and contacts of each edge by time
+	@param outEdgeOffsets: offsets of the contacts of each out edge, null if every edge has a single contact
+	@param inEdgeOffsets: offsets of the contacts of each in edge, null if every edge has a single contact
+	*/
+	TemporalGraphCSR(boolean directed, int numedges, int[] outOffsets, int[] outNeighbors, int[] outEdgeOffsets, int[] outTimes,
+			int[] inOffsets, int[] inNeighbors, int[] inEdgeOffsets, int[] inTimes)
+	{
+		this(directed,numedges,outOffsets,outNeighbors,outEdgeOffsets,outTimes,inOffsets,inNeighbors,inEdgeOffsets,inTimes,
+				sortTimes(outOffsets,outEdgeOffsets,outTimes),sortTimes(inOffsets,inEdgeOffsets,inTimes));
+	}
+
+	/*
+	Constructor with the times of each node already sorted, used when loading a snapshot from file
+	*/
+	TemporalGraphCSR(boolean directed, int numedges, int[] outOffsets, int[] outNeighbors, int[] outEdgeOffsets, int[] outTimes,
+			int[] inOffsets, int[] inNeighbors, int[] inEdgeOffsets, int[] inTimes, int[] outTimesByTime, int[] inTimesByTime)
+	{
+		this.directed=directed;
+		this.numNodes=outOffsets.length-1;
+		this.numedges=numedges;
+		this.outOffsets=outOffsets;
+		this.outNeighbors=outNeighbors;
+		this.outEdgeOffsets=outEdgeOffsets;
+		this.outTimes=outTimes;
+		this.inOffsets=inOffsets;
+		this.inNeighbors=inNeighbors;
+		this.inEdgeOffsets=inEdgeOffsets;
+		this.inTimes=inTimes;
+		this.outTimesByTime=outTimesByTime;
+		this.inTimesByTime=inTimesByTime;
+	}
+
+	/*
+	Build a snapshot directly from an edge list, as TemporalGraph.freeze() of the graph obtained
+	adding the edges one by one with addEdge(source,dest,time)
+	@param numNodes: number of nodes of the graph
+	@param sources: first node of each edge
+	@param dests: second node of each edge
+	@param times: time of each edge
+	@param numedges: number of edges, i.e. number of entries of the three arrays to use
+	*/
+	public static TemporalGraphCSR fromEdges(boolean directed, int numNodes, int[] sources, int[] dests, int[] times, int numedges)
+	{
+		int[][] out=buildAdjacency(numNodes,sources,dests,times,numedges,!directed);
+		int[][] in=directed ? buildAdjacency(numNodes,dests,sources,times,numedges,false) : out;
+		int[] outEdgeOffsets=out[2], inEdgeOffsets=in[2];
+		//edges with a single contact do not need contact offsets
+		if(out[3].length == out[1].length && in[3].length == in[1].length)
+		{
+			outEdgeOffsets=null;
+			inEdgeOffsets=null;
+		}
+		return new TemporalGraphCSR(directed,numedges,out[0],out[1],outEdgeOffsets,out[3],in[0],in[1],inEdgeOffsets,in[3]);
+	}
+
+	/*
+	Build node offsets, sorted neighbors, edge offsets and times of the contacts from node from[i] to node to[i]
+	(and also from to[i] to from[i] if both is true)
+	@return the four arrays
+	*/
+	private static int[][] buildAdjacency(int numNodes, int[] from, int[] to, int[] times, int numedges, boolean both)
+	{
+		int[] offsets=new int[numNodes+1];
+		for(int i=0;i<numedges;i++)
+		{
+			offsets[from[i]+1]++;
+			if(both)
+				offsets[to[i]+1]++;
+		}
+		for(int i=0;i<numNodes;i++)
+			offsets[i+1]+=offsets[i];
+		//Contacts of each node as neighbor in the high half and time, with the sign bit flipped, in the low half,
+		//so that sorting them sorts by neighbor and then by time
+		long[] contacts=new long[offsets[numNodes]];
+		int[] next=Arrays.copyOf(offsets,numNodes);
+		for(int i=0;i<numedges;i++)
+		{
+			contacts[next[from[i]]++]=((long)to[i]<<32) | ((times[i]^Integer.MIN_VALUE) & 0xffffffffL);
+			if(both)
+				contacts[next[to[i]]++]=((long)from[i]<<32) | ((times[i]^Integer.MIN_VALUE) & 0xffffffffL);
+		}
+		int[] edgeCount=new int[numNodes];
+		IntStream.range(0,numNodes).parallel().forEach(node -> {
+			Arrays.sort(contacts,offsets[node],offsets[node+1]);
+			for(int c=offsets[node];c<offsets[node+1];c++)
+				if(c==offsets[node] || contacts[c]>>>32 != contacts[c-1]>>>32)
+					edgeCount[node]++;
+		});
+		int[] edgeOffsets=new int[numNodes+1];
+		for(int i=0;i<numNodes;i++)
+			edgeOffsets[i+1]=edgeOffsets[i]+edgeCount[i];
+		int[] neighbors=new int[edgeOffsets[numNodes]];
+		int[] contactOffsets=new int[neighbors.length+1];
+		int[] contactTimes=new int[contacts.length];
+		IntStream.range(0,numNodes).parallel().forEach(node -> {
+			int e=edgeOffsets[node]-1;
+			for(int c=offsets[node];c<offsets[node+1];c++)
+			{
+				if(c==offsets[node] || contacts[c]>>>32 != contacts[c-1]>>>32)
+				{
+					e++;
+					neighbors[e]=(int)(contacts[c]>>>32);
+					contactOffsets[e]=c;
+				}
+				contactTimes[c]=(int)contacts[c]^Integer.MIN_VALUE;
+			}
+		});
+		contactOffsets[neighbors.length]=contacts.length;
+		return new int[][] {edgeOffsets,neighbors,contactOffsets,contactTimes};
+	}
+
+	/*
+	Copy of the times with the contacts of each node sorted by time
+	*/
+	private static int[] sortTimes(int[] offsets, int[] edgeOffsets, int[] times)
+	{
+		int[] sorted=times.clone();
+		for(int i=0;i<offsets.length-1;i++)
+		{
+			int begin=edgeOffsets==null ? offsets[i] : edgeOffsets[offsets[i]];
+			int end=edgeOffsets==null ? offsets[i+1] : edgeOffsets[offsets[i+1]];
+			Arrays.sort(sorted,begin,end);
+		}
+		return sorted;
+	}
+
+	/*
+	Number of values of times[begin..end-1], sorted in ascending order, in the range [from,to]
+	*/
+	static int countTimes(int[] times, int begin, int end, long from, long to)
+	{
+		if(from > to)
+			return 0;
+		return firstAbove(times,begin,end,to,false)-firstAbove(times,begin,end,from,true);
+	}
+
+	/*
+	First position of times[begin..end-1], sorted in ascending order, with a value greater than bound
+	(greater than or equal to bound if inclusive is true)
+	*/
+	private static int firstAbove(int[] times, int begin, int end, long bound, boolean inclusive)
+	{
+		while(begin < end)
+		{
+			int mid=(begin+end)>>>1;
+			if(times[mid] < bound || (!inclusive && times[mid] == bound))
+				begin=mid+1;
+			else
+				end=mid;
+		}
+		return begin;
+	}
+
+	/*
+	Number of out contacts of a node with time in [from,to]
+	*/
+	public int countOutContacts(int node, long from, long to)
+	{
+		return countTimes(outTimesByTime,outContactsBegin(node),outContactsEnd(node),from,to);
+	}
+
+	/*
+	Number of in contacts of a node with time in [from,to]
+	*/
+	public int countInContacts(int node, long from, long to)
+	{
+		return countTimes(inTimesByTime,inContactsBegin(node),inContactsEnd(node),from,to);
+	}
+
+	/*
+	Positions in outTimes of the first contact of an out edge with time at least from and after its last contact
+	with time at most to: contacts of an edge are sorted by time, so its contacts in [from,to] are the ones in between
+	*/
+	public int outContactBegin(int edge, long from)
+	{
+		return firstAbove(outTimes,outContactBegin(edge),outContactEnd(edge),from,true);
+	}
+
+	public int outContactEnd(int edge, long to)
+	{
+		return firstAbove(outTimes,outContactBegin(edge),outContactEnd(edge),to,false);
+	}
+
+	/*
+	Positions in outTimes of the first contact of an out edge and after its last contact
+	*/
+	public int outContactBegin(int edge)
+	{
+		return outEdgeOffsets==null ? edge : outEdgeOffsets[edge];
+	}
+
+	public int outContactEnd(int edge)
+	{
+		return outEdgeOffsets==null ? edge+1 : outEdgeOffsets[edge+1];
+	}
+
+	/*
+	Positions in inTimes of the first contact of an in edge and after its last contact
+	*/
+	public int inContactBegin(int edge)
+	{
+		return inEdgeOffsets==null ? edge : inEdgeOffsets[edge];
+	}
+
+	public int inContactEnd(int edge)
+	{
+		return inEdgeOffsets==null ? edge+1 : inEdgeOffsets[edge+1];
+	}
+
+	/*
+	Positions in outTimes (and outTimesByTime) of the first out contact of a node and after its last one
+	*/
+	public int outContactsBegin(int node)
+	{
+		return outContactBegin(outOffsets[node]);
+	}
+
+	public int outContactsEnd(int node)
+	{
+		return outContactBegin(outOffsets[node+1]);
+	}
+
+	/*
+	Positions in inTimes (and inTimesByTime) of the first in contact of a node and after its last one
+	*/
+	public int inContactsBegin(int node)
+	{
+		return inContactBegin(inOffsets[node]);
+	}
+
+	public int inContactsEnd(int node)
+	{
+		return inContactBegin(inOffsets[node+1]);
+	}
+
+	/*
+	Does every edge have a single contact?
+	*/
+	public boolean hasSingleContacts()
+	{
+		return outEdgeOffsets==null;
+	}
+
+	/*
+	Find the position of the edge source->target in the out arrays
+	@return position of the edge, -1 if source and target are not adjacent
+	*/
+	public int findOut(int source, int target)
+	{
+		int pos=Arrays.binarySearch(outNeighbors,outOffsets[source],outOffsets[source+1],target);
+		return pos>=0 ? pos : -1;
+	}
+
+	/*
+	Is there a contact from source to target?
+	*/
+	public boolean containsOut(int source, int target)
+	{
+		return findOut(source,target)>=0;
+	}
+
+	/*
+	Copy of the sorted out-neighbors of a node
+	*/
+	public int[] outNeighborsOf(int node)
+	{
+		return Arrays.copyOfRange(outNeighbors,outOffsets[node],outOffsets[node+1]);
+	}
+
+	/*
+	Copy of the sorted in-neighbors of a node
+	*/
+	public int[] inNeighborsOf(int node)
+	{
+		return Arrays.copyOfRange(inNeighbors,inOffsets[node],inOffsets[node+1]);
+	}
+
+	/**
+	 * Computes 6 numbers, number of edges that have contact, as TemporalGraph.nodeTemporalStructure
+	 * @param destination: contact destination
+	 * @param time: contact time
+	 * @param delta: control over paths and consecutive edges
+	 */
+	public Vector<Integer> nodeTemporalStructure(int destination,int time,int delta)
+	{
+		int[] signature=new int[6];
+		nodeTemporalStructure(destination,time,delta,signature,0);
+		Vector<Integer> returnVal = new Vector<Integer>(6);
+		for(int value : signature)
+			returnVal.add(value);
+		return returnVal;
+	}
+
+	/**
+	 * Computes the 6 numbers of nodeTemporalStructure into an array
+	 * @param destination: contact destination
+	 * @param time: contact time
+	 * @param delta: control over paths and consecutive edges
+	 * @param signature: array where the numbers are stored
+	 * @param offset: position of the first number
+	 */
+	public void nodeTemporalStructure(int destination,int time,int delta,int[] signature,int offset)
+	{
+		//computing times |inf| and |sup| for in edges
+		int inInf = countInContacts(destination,Long.MIN_VALUE,time);
+		int inSup = inContactsEnd(destination) - inContactsBegin(destination) - inInf;
+		int inDeltaRespected = countInContacts(destination,(long)time - delta,time);
+		int inDeltaNotRespected = inInf - inDeltaRespected;
+		//computing times |inf| and |sup| for out edges
+		int outInf = countOutContacts(destination,Long.MIN_VALUE,time);
+		int outSup = outContactsEnd(destination) - outContactsBegin(destination) - outInf;
+		int outDeltaRespected = countOutContacts(destination,(long)time + 1,(long)time + delta);
+		inDeltaRespected += outDeltaRespected;
+		inDeltaNotRespected += outSup - outDeltaRespected;
+		signature[offset] = inInf;
+		signature[offset+1] = inSup;
+		signature[offset+2] = outInf;
+		signature[offset+3] = outSup;
+		signature[offset+4] = inDeltaNotRespected;
+		signature[offset+5] = inDeltaRespected;
+	}
+
+	/*
+	Compute the temporal signature (see nodeTemporalStructure) of every out contact.
+	The signature of the contact in position c of outTimes is stored in positions 6*c..6*c+5
+	@param delta: delta used for the signatures
+	@param parallel: compute the signatures of different nodes in parallel
+	*/
+	public int[] contactSignatures(int delta, boolean parallel)
+	{
+		int[] signatures=new int[6*outTimes.length];
+		IntStream sources=IntStream.range(0,numNodes);
+		if(parallel)
+			sources=sources.parallel();
+		sources.forEach(source -> {
+			for(int e=outOffsets[source];e<outOffsets[source+1];e++)
+				for(int c=outContactBegin(e);c<outContactEnd(e);c++)
+					nodeTemporalStructure(outNeighbors[e],outTimes[c],delta,signatures,6*c);
+		});
+		return signatures;
+	}
+
+	/*
+	Nodes of all the contacts sorted by time: each contact gives the key (time<<32)|node for its source and for its target,
+	so the nodes with a contact in [from,to] are those of the keys from (from<<32) to (to<<32)|0xffffffff
+	*/
+	public long[] nodesByTime()
+	{
+		long[] keys=new long[outTimesByTime.length+inTimesByTime.length];
+		int k=0;
+		for(int node=0;node<numNodes;node++)
+		{
+			for(int c=outContactsBegin(node);c<outContactsEnd(node);c++)
+				keys[k++]=((long)outTimesByTime[c]<<32) | node;
+			for(int c=inContactsBegin(node);c<inContactsEnd(node);c++)
+				keys[k++]=((long)inTimesByTime[c]<<32) | node;
+		}
+		Arrays.parallelSort(keys);
+		return keys;
+	}
+
+	/*
+	Estimated heap size of the snapshot, in bytes
+	*/
+	public long estimatedBytes()
+	{
+		long ints=(long)outOffsets.length+outNeighbors.length+outTimes.length+outTimesByTime.length
+				+inOffsets.length+inNeighbors.length+inTimes.length+inTimesByTime.length;
+		if(outEdgeOffsets!=null)
+			ints+=outEdgeOffsets.length+inEdgeOffsets.length;
+		//10 array headers plus the object itself
+		return 4*ints+11*16;
+	}
+
+	public boolean isDirected()
+	{
+		return directed;
+	}
+
+	public int getNumNodes()
+	{
+		return numNodes;
+	}
+
+	public int getNumedges()
+	{
+		return numedges;
+	}
+
+	/*
+	Number of out contacts, i.e. length of outTimes
+	*/
+	public int getNumContacts()
+	{
+		return outTimes.length;
+	}
+
+	public int outDegree(int node)
+	{
+		return outOffsets[node+1]-outOffsets[node];
+	}
+
+	public int inDegree(int node)
+	{
+		return inOffsets[node+1]-inOffsets[node];
+	}
+
+	/*
+	Offsets, neighbors and times arrays. They are shared with the snapshot and must not be modified
+	*/
+	public int[] getOutOffsets()
+	{
+		return outOffsets;
+	}
+
+	public int[] getOutNeighbors()
+	{
+		return outNeighbors;
+	}
+
+	public int[] getOutEdgeOffsets()
+	{
+		return outEdgeOffsets;
+	}
+
+	public int[] getOutTimes()
+	{
+		return outTimes;
+	}
+
+	public int[] getInOffsets()
+	{
+		return inOffsets;
+	}
+
+	public int[] getInNeighbors()
+	{
+		return inNeighbors;
+	}
+
+	public int[] getInEdgeOffsets()
+	{
+		return inEdgeOffsets;
+	}
+
+	public int[] getInTimes()
+	{
+		return inTimes;
+	}
+
+	public int[] getOutTimesByTime()
+	{
+		return outTimesByTime;
+	}
+
+	public int[] getInTimesByTime()
+	{
+		return inTimesByTime;
+	}
+}
@@ -0,0 +1,327 @@
+/*
+Generator of synthetic directed temporal graphs, to benchmark without external datasets.
+First the pairs of nodes with contacts are chosen, with an Erdos-Renyi or Barabasi-Albert topology,
+then each pair gets one or more contacts, with uniform or bursty times.
+Generation only depends on the parameters and the seed, so the same generator always gives the same contacts.
+Contacts are passed one at a time to a ContactConsumer, so that they can go straight into a TemporalGraph,
+into the arrays of TemporalGraphCSR.fromEdges or into a file, without being stored by the generator.
+*/
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+public class TemporalGraphGenerator
+{
+	public enum Topology {ERDOS_RENYI, BARABASI_ALBERT}
+	public enum Timing {UNIFORM, BURSTY}
+
+	/*
+	Receiver of the generated contacts
+	*/
+	public interface ContactConsumer
+	{
+		void accept(int source, int dest, int time);
+	}
+
+	private final int numNodes;
+	private final long numPairs;
+	private final long seed;
+	private Topology topology=Topology.ERDOS_RENYI;
+	//Probability that a Barabasi-Albert pair is attached preferentially by degree rather than uniformly
+	private double skew=1;
+	private Timing timing=Timing.UNIFORM;
+	//Contact times are in [0,timeSpan)
+	private int timeSpan=1000000;
+	//Average number of contacts of a pair, at least 1
+	private double contactsPerPair=1;
+	//Bursty timing: probability that a contact follows the previous contact of the same pair instead of falling
+	//uniformly in the time span, and average delay after it
+	private double burstiness=0.8;
+	private double burstDelay=100;
+
+	/*
+	Constructor
+	@param numNodes: number of nodes
+	@param numPairs: number of pairs of nodes with contacts
+	@param seed: seed of the random generator
+	*/
+	public TemporalGraphGenerator(int numNodes, long numPairs, long seed)
+	{
+		if(numNodes < 2)
+			throw new IllegalArgumentException("At least 2 nodes are needed: "+numNodes);
+		this.numNodes=numNodes;
+		this.numPairs=numPairs;
+		this.seed=seed;
+	}
+
+	/*
+	Choose pairs uniformly at random (Erdos-Renyi), or attach each new node to the previous ones (Barabasi-Albert)
+	*/
+	public TemporalGraphGenerator setTopology(Topology topology)
+	{
+		this.topology=topology;
+		return this;
+	}
+
+	/*
+	Degree skew of Barabasi-Albert graphs: with probability skew each new pair is attached to an endpoint of a previous pair,
+	i.e. to a node chosen with probability proportional to its degree, otherwise to a node chosen uniformly.
+	1 gives the power law degrees of preferential attachment, 0 gives uniform attachment
+	*/
+	public TemporalGraphGenerator setSkew(double skew)
+	{
+		this.skew=skew;
+		return this;
+	}
+
+	public TemporalGraphGenerator setTimeSpan(int timeSpan)
+	{
+		this.timeSpan=timeSpan;
+		return this;
+	}
+
+	/*
+	Average number of contacts of each pair: the contacts beyond the first one are geometrically distributed
+	*/
+	public TemporalGraphGenerator setContactsPerPair(double contactsPerPair)
+	{
+		this.contactsPerPair=Math.max(1,contactsPerPair);
+		return this;
+	}
+
+	/*
+	Uniform times, or bursty times as in a self-exciting (Hawkes-like) process: each contact of a pair
+	follows the previous one after an exponential delay with mean burstDelay with probability burstiness,
+	otherwise it falls uniformly in the time span
+	*/
+	public TemporalGraphGenerator setTiming(Timing timing)
+	{
+		this.timing=timing;
+		return this;
+	}
+
+	public TemporalGraphGenerator setBursts(double burstiness, double burstDelay)
+	{
+		this.burstiness=burstiness;
+		this.burstDelay=burstDelay;
+		return this;
+	}
+
+	/*
+	Generate the contacts, passing them to consumer grouped by pair, in no particular time order
+	@return number of contacts generated
+	*/
+	public long generate(ContactConsumer consumer)
+	{
+		SplittableRandom random=new SplittableRandom(seed);
+		if(topology == Topology.ERDOS_RENYI)
+			return generateErdosRenyi(random,consumer);
+		return generateBarabasiAlbert(random,consumer);
+	}
+
+	/*
+	Pairs drawn independently, so in dense graphs a pair can be drawn more than once and get the contacts of every draw
+	*/
+	private long generateErdosRenyi(SplittableRandom random, ContactConsumer consumer)
+	{
+		long numContacts=0;
+		for(long p=0; p<numPairs; p++)
+		{
+			int source=random.nextInt(numNodes);
+			int dest=random.nextInt(numNodes-1);
+			if(dest >= source)
+				dest++;
+			numContacts+=contacts(random,source,dest,consumer);
+		}
+		return numContacts;
+	}
+
+	/*
+	Nodes arrive one at a time, each one with numPairs/numNodes pairs towards the previous nodes,
+	in a random direction. Endpoints of the previous pairs are kept to draw nodes by degree, 8 bytes for each pair
+	*/
+	private long generateBarabasiAlbert(SplittableRandom random, ContactConsumer consumer)
+	{
+		int pairsPerNode=(int)Math.max(1,numPairs/numNodes);
+		long maxPairs=(long)pairsPerNode*(numNodes-1);
+		if(maxPairs > Integer.MAX_VALUE-8)
+			throw new IllegalArgumentException("Too many pairs for a Barabasi-Albert graph: "+maxPairs);
+		int[] sources=new int[(int)maxPairs];
+		int[] dests=new int[(int)maxPairs];
+		int pairs=0;
+		long numContacts=0;
+		for(int node=1; node<numNodes; node++)
+		{
+			for(int k=0; k<pairsPerNode; k++)
+			{
+				int other=-1;
+				if(pairs > 0 && random.nextDouble() < skew)
+				{
+					int j=random.nextInt(pairs);
+					other=random.nextBoolean() ? sources[j] : dests[j];
+				}
+				if(other < 0 || other == node)
+					other=random.nextInt(node);
+				if(random.nextBoolean())
+				{
+					sources[pairs]=node;
+					dests[pairs]=other;
+				}
+				else
+				{
+					sources[pairs]=other;
+					dests[pairs]=node;
+				}
+				numContacts+=contacts(random,sources[pairs],dests[pairs],consumer);
+				pairs++;
+			}
+		}
+		return numContacts;
+	}
+
+	/*
+	Generate the contacts of a pair
+	@return number of contacts
+	*/
+	private int contacts(SplittableRandom random, int source, int dest, ContactConsumer consumer)
+	{
+		int count=1;
+		//Geometric number of further contacts with mean contactsPerPair-1
+		double more=(contactsPerPair-1)/contactsPerPair;
+		while(random.nextDouble() < more)
+			count++;
+		long time=random.nextInt(timeSpan);
+		for(int c=0; c<count; c++)
+		{
+			if(c > 0)
+			{
+				if(timing == Timing.BURSTY && random.nextDouble() < burstiness)
+					time=Math.min(timeSpan-1,time+(long)(-burstDelay*Math.log(1-random.nextDouble())));
+				else
+					time=random.nextInt(timeSpan);
+			}
+			consumer.accept(source,dest,(int)time);
+		}
+		return count;
+	}
+
+	/*
+	Generate the contacts into a TemporalGraph, for small graphs and queries
+	*/
+	public TemporalGraph generateGraph()
+	{
+		TemporalGraph graph=new TemporalGraph(true,numNodes);
+		generate((source,dest,time) -> graph.addEdge(source,dest,time));
+		return graph;
+	}
+
+	/*
+	Generate the contacts straight into a CSR snapshot, with no TemporalGraph in between.
+	Contacts take 12 bytes each while they are collected, plus the memory of TemporalGraphCSR.fromEdges
+	*/
+	public TemporalGraphCSR generateCSR()
+	{
+		EdgeArrays edges=new EdgeArrays((int)Math.min(Integer.MAX_VALUE-8,(long)(numPairs*contactsPerPair*1.1)+16));
+		generate(edges);
+		return TemporalGraphCSR.fromEdges(true,numNodes,edges.sources,edges.dests,edges.times,edges.size);
+	}
+
+	/*
+	Contacts collected in growing arrays
+	*/
+	private static final class EdgeArrays implements ContactConsumer
+	{
+		int[] sources, dests, times;
+		int size;
+
+		EdgeArrays(int capacity)
+		{
+			sources=new int[capacity];
+			dests=new int[capacity];
+			times=new int[capacity];
+		}
+
+		@Override
+		public void accept(int source, int dest, int time)
+		{
+			if(size == sources.length)
+			{
+				if(size >= Integer.MAX_VALUE-8)
+					throw new IllegalStateException("Too many contacts: "+size);
+				int capacity=(int)Math.min(Integer.MAX_VALUE-8,2L*size);
+				sources=Arrays.copyOf(sources,capacity);
+				dests=Arrays.copyOf(dests,capacity);
+				times=Arrays.copyOf(times,capacity);
+			}
+			sources[size]=source;
+			dests[size]=dest;
+			times[size]=time;
+			size++;
+		}
+	}
+
+	/*
+	Main method: generate a target and write it as a binary snapshot, see FileManagerTemporal.writeBinaryGraph
+	@param args: values of input parameters
+	*/
+	public static void main(String[] args)
+	{
+		int numNodes=100000;
+		long numPairs=1000000;
+		long seed=42;
+		String outputFile="generated.tgb";
+		TemporalGraphGenerator generator;
+		Topology topology=Topology.ERDOS_RENYI;
+		Timing timing=Timing.UNIFORM;
+		double skew=1, contactsPerPair=1;
+		int timeSpan=1000000;
+		int i;
+		for(i=0;i<args.length;i++)
+		{
+			switch(args[i])
+			{
+				case "-n" -> numNodes=Integer.parseInt(args[++i]);
+				case "-m" -> numPairs=Long.parseLong(args[++i]);
+				case "-c" -> contactsPerPair=Double.parseDouble(args[++i]);
+				case "-ba" -> topology=Topology.BARABASI_ALBERT;
+				case "-skew" -> skew=Double.parseDouble(args[++i]);
+				case "-bursty" -> timing=Timing.BURSTY;
+				case "-span" -> timeSpan=Integer.parseInt(args[++i]);
+				case "-s" -> seed=Long.parseLong(args[++i]);
+				case "-o" -> outputFile=args[++i];
+				default -> {
+					System.out.println("Error! Unrecognizable command '"+args[i]+"'");
+					printHelp();
+					System.exit(1);
+				}
+			}
+		}
+		generator=new TemporalGraphGenerator(numNodes,numPairs,seed).setTopology(topology).setSkew(skew)
+				.setTiming(timing).setTimeSpan(timeSpan).setContactsPerPair(contactsPerPair);
+		long inizio=System.currentTimeMillis();
+		TemporalGraphCSR graph=generator.generateCSR();
+		System.out.println("Generated "+graph.getNumContacts()+" contacts in "+(System.currentTimeMillis()-inizio)/1000.0+" secs");
+		new FileManagerTemporal().writeBinaryGraph(outputFile,graph);
+		System.out.println("Graph written in "+outputFile);
+	}
+
+	/*
+	Print help string for TemporalGraphGenerator usage
+	*/
+	public static void printHelp()
+	{
+		String help="Usage: java -cp ./out TemporalGraphGenerator [-n <nodes> -m <pairs> -c <contactsPerPair> -ba -skew <skew> "+
+				"-bursty -span <timeSpan> -s <seed> -o <outputFile>]\n\n";
+		help+="OPTIONAL PARAMETERS:\n";
+		help+="-n\tNumber of nodes (default=100000)\n";
+		help+="-m\tNumber of pairs of nodes with contacts (default=1000000)\n";
+		help+="-c\tAverage number of contacts per pair (default=1)\n";
+		help+="-ba\tBarabasi-Albert topology (default=Erdos-Renyi)\n";
+		help+="-skew\tProbability of preferential attachment in Barabasi-Albert graphs (default=1)\n";
+		help+="-bursty\tBursty contact times (default=uniform)\n";
+		help+="-span\tTime span of the contacts (default=1000000)\n";
+		help+="-s\tSeed of the random generator (default=42)\n";
+		help+="-o\tOutput binary snapshot (default=generated.tgb)\n";
+		System.out.println(help);
+	}
+}